@@ -0,0 +1,62 @@
+package tinyboycov.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javr.core.AVR;
+import tinyboy.core.TinyBoyEmulator;
+
+/**
+ * Measures the raw rate at which the AVR executes instructions, without any
+ * peripherals, instrumentation or input generation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvrClockBenchmark {
+	/**
+	 * Number of cycles executed per invocation.
+	 */
+	private static final int CYCLES = 10_000;
+
+	@Param({ "blocks_1", "snake", "tetris" })
+	public String firmware = "blocks_1"; //$NON-NLS-1$
+
+	private AVR avr = new TinyBoyEmulator().getAVR();
+
+	@Setup
+	public void setup() throws IOException {
+		TinyBoyEmulator tinyBoy = new TinyBoyEmulator();
+		tinyBoy.upload(Firmware.load(this.firmware));
+		this.avr = tinyBoy.getAVR();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CYCLES)
+	public int clock() {
+		for (int i = 0; i != CYCLES; ++i) {
+			try {
+				this.avr.clock();
+			} catch (AVR.HaltedException e) {
+				this.avr.reset();
+			}
+		}
+		return this.avr.getPC();
+	}
+}
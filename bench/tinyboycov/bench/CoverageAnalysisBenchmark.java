@@ -0,0 +1,78 @@
+package tinyboycov.bench;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javr.io.HexFile;
+import tinyboy.util.CoverageAnalysis;
+import tinyboycov.util.FirmwareAnalysis;
+
+/**
+ * Measures the cost of constructing the coverage analysis (i.e. disassembling
+ * and identifying branches) for a given firmware, and of recording a result
+ * and then recomputing branch coverage (as the fuzz tester does after every
+ * input).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoverageAnalysisBenchmark {
+	@Param({ "blocks_1", "numbers_1", "snake", "tetris" })
+	public String firmware = "blocks_1"; //$NON-NLS-1$
+
+	private HexFile hexFile = new HexFile(Collections.emptyList());
+
+	private CoverageAnalysis analysis = new CoverageAnalysis(this.hexFile);
+
+	private FirmwareAnalysis.Coverage coverage = FirmwareAnalysis.of(this.hexFile).newCoverage();
+
+	private BitSet code = new BitSet();
+
+	@Setup
+	public void setup() throws IOException {
+		this.hexFile = Firmware.load(this.firmware);
+		this.analysis = new CoverageAnalysis(this.hexFile);
+		this.coverage = FirmwareAnalysis.of(this.hexFile).newCoverage();
+		// Every other reachable instruction, which is typical of a single input.
+		BitSet reachable = this.analysis.getReachableInstructions();
+		for (int i = reachable.nextSetBit(0), j = 0; i >= 0; i = reachable.nextSetBit(i + 1), ++j) {
+			if ((j & 1) == 0) {
+				this.code.set(i);
+			}
+		}
+	}
+
+	@Benchmark
+	public CoverageAnalysis construct() {
+		return new CoverageAnalysis(this.hexFile);
+	}
+
+	@Benchmark
+	public double recordAndRescan() {
+		this.analysis.record(this.code);
+		return this.analysis.getBranchCoverage();
+	}
+
+	@Benchmark
+	public double recordIncremental() {
+		this.coverage.record(this.code);
+		return this.coverage.getBranchCoverage();
+	}
+}
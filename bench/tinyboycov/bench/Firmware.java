@@ -0,0 +1,35 @@
+package tinyboycov.bench;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import javr.io.HexFile;
+
+/**
+ * Utilities for loading the firmware images used in benchmarks.
+ */
+public final class Firmware {
+	/**
+	 * Specifies where to find the firmware images.
+	 */
+	private static final String FIRMWARE_DIR = "tests" + File.separator; //$NON-NLS-1$
+
+	private Firmware() {
+	}
+
+	/**
+	 * Load a given firmware image.
+	 *
+	 * @param name Name of firmware (without the extension).
+	 * @return The firmware image.
+	 * @throws IOException If something goes wrong.
+	 */
+	public static HexFile load(String name) throws IOException {
+		try (FileReader fr = new FileReader(FIRMWARE_DIR + name + ".hex")) { //$NON-NLS-1$
+			HexFile firmware = new HexFile.Reader(fr).readAll();
+			assert firmware != null;
+			return firmware;
+		}
+	}
+}
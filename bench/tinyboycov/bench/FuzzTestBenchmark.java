@@ -0,0 +1,79 @@
+package tinyboycov.bench;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tinyboy.core.ControlPad;
+import tinyboycov.core.PackedInputSequence;
+import tinyboycov.core.TinyBoyInputGenerator;
+import tinyboycov.util.FuzzTester;
+
+/**
+ * Measures the cost of executing a single input (from reset) on each of the
+ * shipped firmware images. Checkpointing is disabled so that every invocation
+ * executes the input in full.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FuzzTestBenchmark {
+	/**
+	 * Seed used to generate the input, fixed so that runs are comparable.
+	 */
+	private static final long RANDOM_SEED = 0x5EED;
+
+	@Param({ "blocker_1", "blocker_2", "blocks_1", "blocks_2", "blocks_3", "blocks_4", "blocks_5", "blocks_6",
+			"blocks_7", "numbers_1", "snake", "tetris" })
+	public String firmware = "blocks_1"; //$NON-NLS-1$
+
+	@Param({ "16" })
+	public int length = 16;
+
+	private ControlPad.Button[] buttons = new ControlPad.Button[0];
+
+	private @Nullable FuzzTester<PackedInputSequence> tester;
+
+	@Setup
+	public void setup() throws IOException {
+		Random random = new Random(RANDOM_SEED);
+		ControlPad.Button[] values = ControlPad.Button.values();
+		this.buttons = new ControlPad.Button[this.length];
+		for (int i = 0; i != this.length; ++i) {
+			this.buttons[i] = values[random.nextInt(values.length)];
+		}
+		this.tester = new FuzzTester<>(Firmware.load(this.firmware), new TinyBoyInputGenerator(), false, 1, false);
+	}
+
+	@TearDown
+	public void teardown() {
+		FuzzTester<PackedInputSequence> t = this.tester;
+		if (t != null) {
+			t.destroy();
+		}
+	}
+
+	@Benchmark
+	public FuzzTester.Result fuzzTest() {
+		FuzzTester<PackedInputSequence> t = this.tester;
+		assert t != null;
+		return t.fuzzTest(new PackedInputSequence(this.buttons));
+	}
+}
@@ -0,0 +1,71 @@
+package tinyboycov.bench;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import tinyboycov.core.PackedInputSequence;
+import tinyboycov.core.TinyBoyInputGenerator;
+import tinyboycov.util.EdgeCoverage;
+
+/**
+ * Measures the throughput of the input generator alone, by generating inputs
+ * and recording synthetic results for them. The synthetic coverage is derived
+ * from the input itself, so that a realistic fraction of inputs are novel and
+ * the corpus grows over the course of an iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratorBenchmark {
+	/**
+	 * Size of the synthetic code memory (in bytes).
+	 */
+	private static final int CODE_SIZE = 8192;
+	/**
+	 * Size of the synthetic data memory (in bytes).
+	 */
+	private static final int DATA_SIZE = 608;
+
+	private TinyBoyInputGenerator generator = new TinyBoyInputGenerator();
+
+	private final byte[] state = new byte[DATA_SIZE];
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		this.generator = new TinyBoyInputGenerator();
+	}
+
+	@Benchmark
+	public int generateAndRecord() {
+		PackedInputSequence input = this.generator.generate();
+		if (input == null) {
+			// Generator exhausted, so start again.
+			this.generator = new TinyBoyInputGenerator();
+			return 0;
+		}
+		// Derive deterministic synthetic results from the input
+		int h = input.toString().hashCode();
+		BitSet coverage = new BitSet();
+		coverage.set((h & 0xFFF) % CODE_SIZE);
+		coverage.set(0, 64);
+		this.state[0] = (byte) h;
+		this.state[1] = (byte) (h >> 8);
+		this.generator.record(input, coverage, EdgeCoverage.EMPTY, this.state);
+		return input.length();
+	}
+}
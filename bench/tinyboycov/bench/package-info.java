@@ -0,0 +1,11 @@
+/**
+ * JMH benchmarks for the fuzzing hot paths. These are kept in a separate
+ * source folder since they depend on JMH, which is not otherwise required. To
+ * run them, compile this folder together with <code>src/</code> against the
+ * jars in <code>lib/</code> and <code>jmh-core</code> (with
+ * <code>jmh-generator-annprocess</code> on the annotation processor path), and
+ * then launch <code>org.openjdk.jmh.Main</code> from the project root (so that
+ * firmware images are found under <code>tests/</code>).
+ */
+@org.eclipse.jdt.annotation.NonNullByDefault
+package tinyboycov.bench;
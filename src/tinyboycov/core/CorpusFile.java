@@ -0,0 +1,266 @@
+package tinyboycov.core;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import javr.io.HexFile;
+import tinyboy.core.ControlPad;
+
+/**
+ * A persistent corpus of inputs for a given firmware, stored on disk so that
+ * subsequent runs can start from where previous ones left off. Each firmware
+ * has its own file, named after a hash of its contents. The file consists of a
+ * header followed by a sequence of records, where each record holds an input
+ * (as packed 2-bit button codes) along with the coverage it obtained. Records
+ * are appended as they are discovered, and existing records are loaded by
+ * mapping the file into memory.
+ */
+public class CorpusFile implements Closeable {
+	/**
+	 * Identifies a corpus file (i.e. "TBC1").
+	 */
+	private static final int MAGIC = 0x54424331;
+	/**
+	 * Size of the header (i.e. magic number and firmware hash).
+	 */
+	private static final int HEADER_SIZE = 12;
+	/**
+	 * The set of buttons available on the control pad.
+	 */
+	private static final ControlPad.Button[] BUTTONS = ControlPad.Button.values();
+	/**
+	 * Entries loaded from the file when it was opened.
+	 */
+	private final List<Entry> entries;
+	/**
+	 * Stream to which new entries are appended.
+	 */
+	private final DataOutputStream out;
+
+	/**
+	 * Construct a corpus file.
+	 *
+	 * @param entries Entries loaded from the file.
+	 * @param out     Stream to which new entries are appended.
+	 */
+	private CorpusFile(List<Entry> entries, DataOutputStream out) {
+		this.entries = entries;
+		this.out = out;
+	}
+
+	/**
+	 * Open the corpus file for a given firmware within a given directory. If no
+	 * such file exists, then an empty one is created.
+	 *
+	 * @param dir      Directory in which corpus files are kept.
+	 * @param firmware The firmware in question.
+	 * @return The corpus file.
+	 * @throws IOException If something goes wrong.
+	 */
+	public static CorpusFile open(File dir, HexFile firmware) throws IOException {
+		long hash = hash(firmware);
+		File file = new File(dir, String.format("%016x.corpus", Long.valueOf(hash))); //$NON-NLS-1$
+		dir.mkdirs();
+		List<Entry> entries = load(file, hash);
+		// Start afresh if the file is missing or not a valid corpus file
+		boolean fresh = entries == null;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, !fresh)));
+		if (entries == null) {
+			out.writeInt(MAGIC);
+			out.writeLong(hash);
+			out.flush();
+			entries = new ArrayList<>();
+		}
+		return new CorpusFile(entries, out);
+	}
+
+	/**
+	 * Get the entries which were stored in this file when it was opened.
+	 *
+	 * @return List of entries.
+	 */
+	public List<Entry> getEntries() {
+		return this.entries;
+	}
+
+	/**
+	 * Append an entry to this file. The entry is written through immediately, so
+	 * that it survives the run being terminated.
+	 *
+	 * @param input    The input to store.
+	 * @param coverage The coverage obtained by that input.
+	 */
+	public void append(PackedInputSequence input, BitSet coverage) {
+		try {
+			byte[] packed = new byte[(input.length() + 3) / 4];
+			for (int i = 0; i != input.length(); ++i) {
+				packed[i >> 2] |= input.get(i).ordinal() << ((i & 3) << 1);
+			}
+			long[] words = coverage.toLongArray();
+			this.out.writeInt(input.length());
+			this.out.write(packed);
+			this.out.writeInt(words.length);
+			for (int i = 0; i != words.length; ++i) {
+				this.out.writeLong(words[i]);
+			}
+			this.out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.out.close();
+	}
+
+	/**
+	 * Load all entries from a given corpus file.
+	 *
+	 * @param file The file to load.
+	 * @param hash The expected firmware hash.
+	 * @return The entries loaded, or <code>null</code> if the file does not exist
+	 *         or is not a valid corpus file for this firmware.
+	 * @throws IOException If something goes wrong.
+	 */
+	private static @Nullable List<Entry> load(File file, long hash) throws IOException {
+		if (!file.exists() || file.length() < HEADER_SIZE) {
+			return null;
+		}
+		ArrayList<Entry> entries = new ArrayList<>();
+		long end;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.getInt() != MAGIC || buffer.getLong() != hash) {
+				return null;
+			}
+			end = buffer.position();
+			while (buffer.hasRemaining()) {
+				Entry entry = read(buffer);
+				if (entry == null) {
+					break;
+				}
+				entries.add(entry);
+				end = buffer.position();
+			}
+		}
+		if (end < file.length()) {
+			// Truncated record (e.g. run was killed whilst writing) which must be
+			// discarded before anything further is appended.
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(end);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Read a single entry from a given buffer.
+	 *
+	 * @param buffer The buffer to read from.
+	 * @return The entry read, or <code>null</code> if it was incomplete.
+	 */
+	private static @Nullable Entry read(ByteBuffer buffer) {
+		try {
+			int length = buffer.getInt();
+			if (length < 0 || ((length + 3) / 4) > buffer.remaining()) {
+				return null;
+			}
+			ControlPad.Button[] buttons = new ControlPad.Button[length];
+			byte[] packed = new byte[(length + 3) / 4];
+			buffer.get(packed);
+			for (int i = 0; i != length; ++i) {
+				buttons[i] = BUTTONS[(packed[i >> 2] >> ((i & 3) << 1)) & 3];
+			}
+			int n = buffer.getInt();
+			if (n < 0 || (n * 8L) > buffer.remaining()) {
+				return null;
+			}
+			long[] words = new long[n];
+			for (int i = 0; i != n; ++i) {
+				words[i] = buffer.getLong();
+			}
+			return new Entry(new PackedInputSequence(buttons), BitSet.valueOf(words));
+		} catch (BufferUnderflowException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Compute a 64-bit hash of a given firmware image (using FNV-1a). This covers
+	 * both the address and contents of every record.
+	 *
+	 * @param firmware The firmware to hash.
+	 * @return The hash.
+	 */
+	public static long hash(HexFile firmware) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i != firmware.size(); ++i) {
+			HexFile.Record record = firmware.get(i);
+			int address = record.getAddress();
+			for (int j = 0; j != record.size(); ++j) {
+				h = (h ^ (address + j)) * 0x100000001b3L;
+				h = (h ^ (record.get(j) & 0xFF)) * 0x100000001b3L;
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * An input stored in the corpus, along with the coverage it obtained.
+	 */
+	public static final class Entry {
+		/**
+		 * The input itself.
+		 */
+		private final PackedInputSequence input;
+		/**
+		 * The coverage it obtained.
+		 */
+		private final BitSet coverage;
+
+		/**
+		 * Construct a new entry.
+		 *
+		 * @param input    The input itself.
+		 * @param coverage The coverage it obtained.
+		 */
+		public Entry(PackedInputSequence input, BitSet coverage) {
+			this.input = input;
+			this.coverage = coverage;
+		}
+
+		/**
+		 * Get the input.
+		 *
+		 * @return The input.
+		 */
+		public PackedInputSequence getInput() {
+			return this.input;
+		}
+
+		/**
+		 * Get the coverage obtained by the input.
+		 *
+		 * @return The coverage.
+		 */
+		public BitSet getCoverage() {
+			return this.coverage;
+		}
+	}
+}
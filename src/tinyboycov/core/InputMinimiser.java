@@ -0,0 +1,134 @@
+package tinyboycov.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Shrinks an input sequence to a shorter one which still obtains the same
+ * coverage, using delta debugging (by chunk removal). Chunks of the sequence
+ * are removed in turn, starting with chunks of half its length, and each
+ * removal is kept if the shortened sequence still obtains the same coverage.
+ * Once no chunk of a given size can be removed, the chunk size is halved. This
+ * stops once no single step can be removed. The minimiser does not run inputs
+ * itself. Instead, each candidate is handed out by <code>next()</code> and the
+ * outcome of testing it reported back through <code>accept()</code> or
+ * <code>reject()</code>. Thus, minimisation proceeds alongside fuzzing on the
+ * same workers.
+ */
+public final class InputMinimiser {
+	/**
+	 * The sequence being shrunk.
+	 */
+	private final PackedInputSequence original;
+	/**
+	 * The shortest sequence known to obtain the original coverage.
+	 */
+	private PackedInputSequence current;
+	/**
+	 * Number of steps currently being removed at a time.
+	 */
+	private int chunk;
+	/**
+	 * The first step of the next chunk to remove.
+	 */
+	private int offset;
+	/**
+	 * The candidate currently being tested (or <code>null</code> if none).
+	 */
+	private @Nullable PackedInputSequence candidate;
+
+	/**
+	 * Construct a minimiser for a given input sequence.
+	 *
+	 * @param input The sequence to shrink.
+	 */
+	public InputMinimiser(PackedInputSequence input) {
+		this.original = input;
+		this.current = input;
+		this.chunk = Math.max(1, input.length() / 2);
+	}
+
+	/**
+	 * Get the sequence being shrunk.
+	 *
+	 * @return The original sequence.
+	 */
+	public PackedInputSequence getOriginal() {
+		return this.original;
+	}
+
+	/**
+	 * Get the shortest sequence found so far which obtains the original coverage.
+	 *
+	 * @return The shortest sequence.
+	 */
+	public PackedInputSequence getCurrent() {
+		return this.current;
+	}
+
+	/**
+	 * Get the candidate currently being tested.
+	 *
+	 * @return The candidate, or <code>null</code> if none is being tested.
+	 */
+	public @Nullable PackedInputSequence getCandidate() {
+		return this.candidate;
+	}
+
+	/**
+	 * Check whether minimisation is complete (i.e. no step of the current
+	 * sequence can be removed).
+	 *
+	 * @return True if complete.
+	 */
+	public boolean isDone() {
+		return this.candidate == null && this.chunk == 0;
+	}
+
+	/**
+	 * Get the next candidate to test. This should only be called when no other
+	 * candidate is being tested. Observe that sequences are never shortened to
+	 * nothing.
+	 *
+	 * @return The next candidate, or <code>null</code> if minimisation is
+	 *         complete.
+	 */
+	public @Nullable PackedInputSequence next() {
+		while (this.chunk > 0) {
+			int length = this.current.length();
+			if (this.offset < length && length > this.chunk) {
+				int end = Math.min(length, this.offset + this.chunk);
+				PackedInputSequence c = this.current.remove(this.offset, end);
+				this.candidate = c;
+				return c;
+			}
+			// Every chunk of this size has been tried, so try smaller ones.
+			this.chunk = this.chunk / 2;
+			this.offset = 0;
+		}
+		return null;
+	}
+
+	/**
+	 * Report that the candidate being tested obtained the original coverage.
+	 * This becomes the current sequence, and the next chunk tried is that now
+	 * at the same offset.
+	 */
+	public void accept() {
+		PackedInputSequence c = this.candidate;
+		if (c != null) {
+			this.current = c;
+			this.candidate = null;
+		}
+	}
+
+	/**
+	 * Report that the candidate being tested did not obtain the original
+	 * coverage. The chunk removed is then kept, and the next one tried.
+	 */
+	public void reject() {
+		if (this.candidate != null) {
+			this.offset = this.offset + this.chunk;
+			this.candidate = null;
+		}
+	}
+}
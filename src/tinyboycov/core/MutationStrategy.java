@@ -0,0 +1,71 @@
+package tinyboycov.core;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Determines how the input generator mutates seeds from its corpus. When more
+ * than one operator is available, a bandit chooses between them according to
+ * how much new coverage each has found recently. A strategy may also name a
+ * fallback, to which the generator switches once coverage plateaus (i.e. after
+ * <code>FuzzTester.PLATEAU</code> inputs without a new branch). Otherwise, the
+ * run stops at that point. Hence, switching strategy is opt-in.
+ */
+public enum MutationStrategy {
+	/**
+	 * Only ever extend seeds by a single step. This suits firmware where each
+	 * press matters, and is the default.
+	 */
+	EXTEND(null, Mutators.EXTEND),
+	/**
+	 * Choose between all built-in operators. This suits firmware (e.g. games)
+	 * where progress needs buttons held, or patterns of presses repeated.
+	 */
+	BANDIT(null, Mutators.values()),
+	/**
+	 * Extend seeds by a single step as for <code>EXTEND</code> until coverage
+	 * plateaus, then choose between all built-in operators as for
+	 * <code>BANDIT</code>. This suits firmware where it is unclear which is best,
+	 * though reaching the plateau takes some time.
+	 */
+	ADAPTIVE(BANDIT, Mutators.EXTEND);
+
+	/**
+	 * The operators available.
+	 */
+	private final Mutator[] mutators;
+	/**
+	 * The strategy to switch to once coverage plateaus (if any).
+	 */
+	private final @Nullable MutationStrategy fallback;
+
+	/**
+	 * Construct a strategy using a given set of operators.
+	 *
+	 * @param fallback The strategy to switch to once coverage plateaus (or
+	 *                 <code>null</code> if the run should stop instead).
+	 * @param mutators The operators available.
+	 */
+	private MutationStrategy(@Nullable MutationStrategy fallback, Mutator... mutators) {
+		this.fallback = fallback;
+		this.mutators = mutators;
+	}
+
+	/**
+	 * Get the operators available under this strategy.
+	 *
+	 * @return A fresh array of operators.
+	 */
+	public Mutator[] getMutators() {
+		return this.mutators.clone();
+	}
+
+	/**
+	 * Get the strategy to switch to once coverage plateaus.
+	 *
+	 * @return The fallback strategy, or <code>null</code> if the run should stop
+	 *         instead.
+	 */
+	public @Nullable MutationStrategy getFallback() {
+		return this.fallback;
+	}
+}
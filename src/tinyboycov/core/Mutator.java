@@ -0,0 +1,25 @@
+package tinyboycov.core;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * An operator which generates new input sequences from one retained in the
+ * corpus. Each application generates a small batch of mutants, all of which are
+ * then tested. Mutants are attributed to the seed they were generated from,
+ * such that seeds leading to new coverage are favoured.
+ */
+public interface Mutator {
+	/**
+	 * Generate a batch of mutants of a given input sequence.
+	 *
+	 * @param input   The sequence being mutated.
+	 * @param others  Supplies other sequences from the corpus (chosen at random),
+	 *                for operators which combine two sequences.
+	 * @param random  Source of randomness.
+	 * @param mutants The list to which the mutants generated are added.
+	 */
+	public void mutate(PackedInputSequence input, Supplier<PackedInputSequence> others, Random random,
+			List<PackedInputSequence> mutants);
+}
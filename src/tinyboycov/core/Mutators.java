@@ -0,0 +1,97 @@
+package tinyboycov.core;
+
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import tinyboy.core.ControlPad;
+
+/**
+ * The built-in mutation operators. Each generates one mutant per button on the
+ * control pad, such that every operator generates batches of the same size.
+ * Mutants which only add steps to the end of a sequence are the cheapest to
+ * test, since they resume from the checkpoint of the sequence itself. Others
+ * resume from the checkpoint of the prefix they share with it (as recorded by
+ * the sequence operations used to construct them).
+ */
+public enum Mutators implements Mutator {
+	/**
+	 * Extend the sequence by one step, pressing each button in turn.
+	 */
+	EXTEND {
+		@Override
+		public void mutate(PackedInputSequence input, Supplier<PackedInputSequence> others, Random random,
+				List<PackedInputSequence> mutants) {
+			for (int i = 0; i != BUTTONS.length; ++i) {
+				mutants.add(input.append(BUTTONS[i]));
+			}
+		}
+	},
+	/**
+	 * Extend the sequence by holding each button in turn for a random number of
+	 * steps. This reaches states needing a button held for some time (e.g.
+	 * moving a piece across the screen) far quicker than extending one step at
+	 * a time.
+	 */
+	HOLD {
+		@Override
+		public void mutate(PackedInputSequence input, Supplier<PackedInputSequence> others, Random random,
+				List<PackedInputSequence> mutants) {
+			for (int i = 0; i != BUTTONS.length; ++i) {
+				mutants.add(input.append(BUTTONS[i], 2 + random.nextInt(MAX_RUN - 1)));
+			}
+		}
+	},
+	/**
+	 * Insert each button in turn at a random step of the sequence.
+	 */
+	INSERT {
+		@Override
+		public void mutate(PackedInputSequence input, Supplier<PackedInputSequence> others, Random random,
+				List<PackedInputSequence> mutants) {
+			for (int i = 0; i != BUTTONS.length; ++i) {
+				mutants.add(input.insert(random.nextInt(input.length() + 1), BUTTONS[i]));
+			}
+		}
+	},
+	/**
+	 * Extend the sequence by repeating a random run of its own steps. This
+	 * reaches states needing some pattern of presses to be repeated (e.g. moving
+	 * then rotating a piece).
+	 */
+	REPEAT {
+		@Override
+		public void mutate(PackedInputSequence input, Supplier<PackedInputSequence> others, Random random,
+				List<PackedInputSequence> mutants) {
+			for (int i = 0; i != BUTTONS.length; ++i) {
+				int start = random.nextInt(input.length());
+				int n = 1 + random.nextInt(Math.min(MAX_RUN, input.length() - start));
+				mutants.add(input.append(input, start, start + n));
+			}
+		}
+	},
+	/**
+	 * Cross over the sequence with others from the corpus, by following a random
+	 * prefix of it with a random suffix of another.
+	 */
+	SPLICE {
+		@Override
+		public void mutate(PackedInputSequence input, Supplier<PackedInputSequence> others, Random random,
+				List<PackedInputSequence> mutants) {
+			for (int i = 0; i != BUTTONS.length; ++i) {
+				PackedInputSequence other = others.get();
+				PackedInputSequence prefix = input.remove(1 + random.nextInt(input.length()), input.length());
+				mutants.add(prefix.append(other, random.nextInt(other.length()), other.length()));
+			}
+		}
+	};
+
+	/**
+	 * The set of buttons available on the control pad.
+	 */
+	private static final ControlPad.Button[] BUTTONS = ControlPad.Button.values();
+	/**
+	 * Maximum number of steps added by holding a button, or repeating a run.
+	 */
+	private static final int MAX_RUN = 32;
+}
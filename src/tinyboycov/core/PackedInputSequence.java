@@ -0,0 +1,273 @@
+package tinyboycov.core;
+
+import java.util.Arrays;
+
+import tinyboy.core.ControlPad;
+import tinyboycov.util.ButtonInput;
+
+/**
+ * A compact alternative to <code>TinyBoyInputSequence</code> which behaves in
+ * exactly the same way, except that every step must press a button. Buttons
+ * are packed two bits apiece into primitive words. Furthermore, sequences are
+ * immutable (aside from their position) and appending shares all complete
+ * words with the original. Thus, generating many extensions of a long sequence
+ * is cheap in both time and space.
+ */
+public final class PackedInputSequence implements ButtonInput {
+	/**
+	 * The set of buttons available on the control pad.
+	 */
+	private static final ControlPad.Button[] BUTTONS = ControlPad.Button.values();
+	/**
+	 * Number of inputs read for each step (i.e. one per button).
+	 */
+	private static final int NUM_INPUTS = BUTTONS.length;
+	/**
+	 * Number of buttons packed into each word.
+	 */
+	private static final int BUTTONS_PER_WORD = 32;
+	/**
+	 * Words which are completely full. These may be shared with other sequences
+	 * and, hence, must never be modified.
+	 */
+	private final long[] words;
+	/**
+	 * The last word, which is only partially full.
+	 */
+	private final long tail;
+	/**
+	 * Number of steps in this sequence.
+	 */
+	private final int length;
+	/**
+	 * Number of leading steps this sequence shares with the one it was derived
+	 * from (if any). Since that sequence has typically been tested already, a
+	 * checkpoint for this prefix is likely to exist.
+	 */
+	private final int shared;
+	/**
+	 * Number of inputs read so far.
+	 */
+	private int clock;
+
+	/**
+	 * Construct a sequence from a given series of button presses.
+	 *
+	 * @param buttons The button pressed at each step.
+	 */
+	public PackedInputSequence(ControlPad.Button... buttons) {
+		long[] ws = new long[buttons.length / BUTTONS_PER_WORD];
+		long t = 0;
+		for (int i = 0; i != buttons.length; ++i) {
+			int w = i / BUTTONS_PER_WORD;
+			long bits = (long) buttons[i].ordinal() << ((i % BUTTONS_PER_WORD) << 1);
+			if (w < ws.length) {
+				ws[w] |= bits;
+			} else {
+				t |= bits;
+			}
+		}
+		this.words = ws;
+		this.tail = t;
+		this.length = buttons.length;
+		this.shared = 0;
+	}
+
+	/**
+	 * Construct a sequence from its packed representation.
+	 *
+	 * @param words  Complete words.
+	 * @param tail   Partially complete word.
+	 * @param length Number of steps.
+	 * @param shared Number of leading steps shared with the sequence this was
+	 *               derived from.
+	 */
+	private PackedInputSequence(long[] words, long tail, int length, int shared) {
+		this.words = words;
+		this.tail = tail;
+		this.length = length;
+		this.shared = shared;
+	}
+
+	/**
+	 * Get the number of steps in this sequence.
+	 *
+	 * @return Number of steps.
+	 */
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * Get the button pressed at a given step.
+	 *
+	 * @param i The step in question.
+	 * @return The button pressed.
+	 */
+	public ControlPad.Button get(int i) {
+		return BUTTONS[code(i)];
+	}
+
+	/**
+	 * Get the number of leading steps this sequence shares with the one it was
+	 * derived from (e.g. the steps before those appended, inserted or removed).
+	 * This is the longest prefix for which a checkpoint is likely to exist.
+	 *
+	 * @return Number of steps shared, or zero if not derived from another.
+	 */
+	public int getShared() {
+		return this.shared;
+	}
+
+	/**
+	 * Construct a new sequence by appending a button press onto this sequence.
+	 * All complete words are shared between this sequence and the new one.
+	 *
+	 * @param button The button to press.
+	 * @return The extended sequence, whose position is at the start.
+	 */
+	public PackedInputSequence append(ControlPad.Button button) {
+		int k = this.length % BUTTONS_PER_WORD;
+		long t = this.tail | ((long) button.ordinal() << (k << 1));
+		if (k == (BUTTONS_PER_WORD - 1)) {
+			// Tail now complete, so becomes a word in its own right.
+			long[] ws = Arrays.copyOf(this.words, this.words.length + 1);
+			ws[this.words.length] = t;
+			return new PackedInputSequence(ws, 0, this.length + 1, this.length);
+		}
+		return new PackedInputSequence(this.words, t, this.length + 1, this.length);
+	}
+
+	/**
+	 * Construct a new sequence by appending a button held for several steps onto
+	 * this sequence.
+	 *
+	 * @param button The button to press.
+	 * @param count  Number of steps to hold it for.
+	 * @return The extended sequence, whose position is at the start.
+	 */
+	public PackedInputSequence append(ControlPad.Button button, int count) {
+		PackedInputSequence r = this;
+		for (int i = 0; i != count; ++i) {
+			r = r.append(button);
+		}
+		return r.sharing(this.length);
+	}
+
+	/**
+	 * Construct a new sequence by appending a range of steps from another
+	 * sequence onto this sequence.
+	 *
+	 * @param other The sequence whose steps are appended.
+	 * @param start The first step appended.
+	 * @param end   The step after the last appended.
+	 * @return The extended sequence, whose position is at the start.
+	 */
+	public PackedInputSequence append(PackedInputSequence other, int start, int end) {
+		PackedInputSequence r = this;
+		for (int i = start; i != end; ++i) {
+			r = r.append(other.get(i));
+		}
+		return r.sharing(this.length);
+	}
+
+	/**
+	 * Construct a new sequence by inserting a button press into this sequence.
+	 *
+	 * @param index  The step at which the button is pressed.
+	 * @param button The button to press.
+	 * @return The extended sequence, whose position is at the start.
+	 */
+	public PackedInputSequence insert(int index, ControlPad.Button button) {
+		ControlPad.Button[] buttons = new ControlPad.Button[this.length + 1];
+		for (int i = 0; i != index; ++i) {
+			buttons[i] = get(i);
+		}
+		buttons[index] = button;
+		for (int i = index; i != this.length; ++i) {
+			buttons[i + 1] = get(i);
+		}
+		return new PackedInputSequence(buttons).sharing(index);
+	}
+
+	/**
+	 * Construct a new sequence by removing a range of steps from this sequence.
+	 *
+	 * @param start The first step removed.
+	 * @param end   The step after the last removed.
+	 * @return The shortened sequence, whose position is at the start.
+	 */
+	public PackedInputSequence remove(int start, int end) {
+		ControlPad.Button[] buttons = new ControlPad.Button[this.length - (end - start)];
+		for (int i = 0; i != start; ++i) {
+			buttons[i] = get(i);
+		}
+		for (int i = end; i != this.length; ++i) {
+			buttons[i - (end - start)] = get(i);
+		}
+		return new PackedInputSequence(buttons).sharing(start);
+	}
+
+	/**
+	 * Get a copy of this sequence which shares a given number of leading steps
+	 * with the one it was derived from.
+	 *
+	 * @param n Number of steps shared.
+	 * @return The copy, whose position is at the start.
+	 */
+	private PackedInputSequence sharing(int n) {
+		return new PackedInputSequence(this.words, this.tail, this.length, n);
+	}
+
+	@Override
+	public boolean hasNext() {
+		return (this.clock / NUM_INPUTS) <= this.length;
+	}
+
+	@Override
+	public boolean nextBoolean() {
+		int c = this.clock++;
+		int i = c / NUM_INPUTS;
+		return i < this.length && code(i) == (c % NUM_INPUTS);
+	}
+
+	@Override
+	public void skip(int n) {
+		this.clock += n;
+	}
+
+	@Override
+	public int seek(int button, boolean pressed) {
+		if ((this.clock % NUM_INPUTS) != 0) {
+			return 0;
+		}
+		int start = this.clock / NUM_INPUTS;
+		int step = start;
+		while (step < this.length && (code(step) == button) != pressed) {
+			step = step + 1;
+		}
+		this.clock = step * NUM_INPUTS;
+		return step - start;
+	}
+
+	@Override
+	public String toString() {
+		char[] chars = new char[this.length];
+		for (int i = 0; i != chars.length; ++i) {
+			chars[i] = get(i).name().charAt(0);
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Get the (two bit) code of the button pressed at a given step.
+	 *
+	 * @param i The step in question.
+	 * @return The button's ordinal.
+	 */
+	private int code(int i) {
+		int w = i / BUTTONS_PER_WORD;
+		long bits = w < this.words.length ? this.words[w] : this.tail;
+		return (int) (bits >>> ((i % BUTTONS_PER_WORD) << 1)) & 3;
+	}
+}
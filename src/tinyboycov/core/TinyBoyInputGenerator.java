@@ -1,50 +1,292 @@
 package tinyboycov.core;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.eclipse.jdt.annotation.Nullable;
 
 import tinyboy.core.ControlPad;
-import tinyboy.core.TinyBoyInputSequence;
-import tinyboy.util.AutomatedTester;
+import tinyboycov.util.Bandit;
+import tinyboycov.util.EdgeCoverage;
+import tinyboycov.util.EdgeMap;
+import tinyboycov.util.FirmwareAnalysis;
+import tinyboycov.util.FuzzTester;
+import tinyboycov.util.LongHashSet;
+import tinyboycov.util.MemoryView;
+import tinyboycov.util.StateHash;
+import tinyboycov.util.WeightTree;
 
 /**
  * The TinyBoy Input Generator is responsible for generating and refining inputs
- * to try and ensure that sufficient branch coverage is obtained.
+ * to try and ensure that sufficient branch coverage is obtained. This is done
+ * by maintaining a corpus of "interesting" inputs (i.e. those which covered
+ * something not previously seen). New inputs are then generated by mutating
+ * inputs from the corpus, where those which have been most productive are
+ * favoured. By default, inputs are only ever extended by a single step. When
+ * more mutation operators are enabled, a bandit chooses between them according
+ * to how much new coverage each has found recently. Coverage here includes
+ * both the instructions executed and, where available, the edges executed
+ * along with their hit counts. When an analysis of the firmware is available,
+ * the generator can also operate in a directed mode where seeds which executed
+ * code close (in the static control-flow graph) to a branch not yet covered
+ * are strongly favoured. Finally, seeds are shrunk in the background to the
+ * shortest sequence obtaining the same coverage, such that inputs extending
+ * them spend fewer cycles replaying needless steps.
  *
  * @author David J. Pearce
  *
  */
-public class TinyBoyInputGenerator implements AutomatedTester.InputGenerator<TinyBoyInputSequence> {
+public class TinyBoyInputGenerator implements FuzzTester.InputGenerator<PackedInputSequence> {
 	/**
 	 * Represents the number of buttons on the control pad.
 	 */
 	private final static int NUM_BUTTONS = ControlPad.Button.values().length;
+	/**
+	 * The set of buttons available on the control pad.
+	 */
+	private final static ControlPad.Button[] BUTTONS = ControlPad.Button.values();
+	/**
+	 * Seed used for the random number generator. This is fixed to ensure runs are
+	 * reproducible.
+	 */
+	private final static long RANDOM_SEED = 0x5EED;
+	/**
+	 * Proportion of seed selections which are directed towards uncovered branches
+	 * (when directed mode is enabled).
+	 */
+	private final static double DIRECTED_RATIO = 0.8;
+	/**
+	 * Minimum number of inputs generated between trials of a shortened seed.
+	 * This keeps minimisation in the background, such that it never holds up
+	 * fuzzing.
+	 */
+	private final static int MINIMISE_INTERVAL = 64;
+	/**
+	 * Maximum number of seeds retained only for reaching a new state. Once
+	 * reached, the oldest such seed is evicted to make room.
+	 */
+	private final static int MAX_STATEFUL = 1024;
 	/**
 	 * Current batch being processed
 	 */
-	private ArrayList<TinyBoyInputSequence> worklist = new ArrayList<>();
+	private ArrayList<PackedInputSequence> worklist = new ArrayList<>();
+	/**
+	 * The set of inputs which have been retained because they covered something
+	 * new at the time they were recorded.
+	 */
+	private final ArrayList<Seed> corpus = new ArrayList<>();
+	/**
+	 * The selection weight of each seed in the corpus, indexed by its slot. This
+	 * is updated whenever a weight changes, such that selecting a seed need not
+	 * sum the weights of the whole corpus.
+	 */
+	private final WeightTree weights = new WeightTree();
+	/**
+	 * The seed occupying each slot (or <code>null</code> if the slot is free).
+	 */
+	private final ArrayList<@Nullable Seed> slots = new ArrayList<>();
+	/**
+	 * Slots freed by seeds evicted from the corpus, which are reused first.
+	 */
+	private final ArrayDeque<Integer> free = new ArrayDeque<>();
+	/**
+	 * The union of all coverage seen so far.
+	 */
+	private final BitSet coverage = new BitSet();
+	/**
+	 * The hit count buckets seen so far for each entry of the edge map.
+	 */
+	private final byte[] edges = new byte[EdgeMap.MAP_SIZE];
+	/**
+	 * Fingerprints of every combination of final state and coverage seen so far.
+	 */
+	private final LongHashSet states = new LongHashSet();
+	/**
+	 * Seeds retained only for reaching a new state, oldest first. This may still
+	 * hold seeds since evicted for being subsumed, which are skipped.
+	 */
+	private final ArrayDeque<Seed> stateful = new ArrayDeque<>();
+	/**
+	 * Maps each input currently being fuzzed to the seed it was derived from (if
+	 * any). This allows feedback to be attributed to the seed.
+	 */
+	private final IdentityHashMap<PackedInputSequence, Seed> parents = new IdentityHashMap<>();
+	/**
+	 * Random number generator used for selecting seeds.
+	 */
+	private final Random random = new Random(RANDOM_SEED);
+	/**
+	 * Persistent corpus into which interesting inputs are written (if any).
+	 */
+	private final @Nullable CorpusFile store;
+	/**
+	 * Inputs loaded from the persistent corpus which are being replayed. These
+	 * are already stored and, hence, should not be written again.
+	 */
+	private final Set<PackedInputSequence> replayed = Collections.newSetFromMap(new IdentityHashMap<>());
+	/**
+	 * Branch coverage obtained so far, which is used to direct seed selection
+	 * towards uncovered branches (or <code>null</code> if not directed).
+	 */
+	private final FirmwareAnalysis.@Nullable Coverage branches;
+	/**
+	 * Seeds waiting to be minimised, in the order they were retained.
+	 */
+	private final ArrayDeque<Seed> unminimised = new ArrayDeque<>();
+	/**
+	 * The seed currently being minimised (or <code>null</code> if none).
+	 */
+	private @Nullable Seed minimising;
+	/**
+	 * The minimiser for the seed currently being minimised (or <code>null</code>
+	 * if none).
+	 */
+	private @Nullable InputMinimiser minimiser;
+	/**
+	 * Number of inputs generated since the last trial of a shortened seed.
+	 */
+	private int sinceTrial;
+	/**
+	 * Determines which mutation operators are currently available.
+	 */
+	private MutationStrategy strategy;
+	/**
+	 * The mutation operators available.
+	 */
+	private Mutator[] mutators;
+	/**
+	 * Chooses which mutation operator to apply next.
+	 */
+	private Bandit bandit;
+	/**
+	 * Maps each input currently being fuzzed to the mutation operator which
+	 * generated it (if any). This allows feedback to be attributed to the
+	 * operator.
+	 */
+	private final IdentityHashMap<PackedInputSequence, Integer> operators = new IdentityHashMap<>();
 
 	/**
 	 * Create new input generator for the TinyBoy simulation.
 	 */
 	public TinyBoyInputGenerator() {
-		// FIXME: this is a very simplistic and poor implementation. However, it
-		// illustrates how to create input sequences!
-		this.worklist.add(new TinyBoyInputSequence(ControlPad.Button.LEFT,ControlPad.Button.UP));
-		this.worklist.add(new TinyBoyInputSequence(ControlPad.Button.LEFT,ControlPad.Button.LEFT));
+		this(null);
+	}
+
+	/**
+	 * Create new input generator for the TinyBoy simulation which is warm-started
+	 * from a persistent corpus. Inputs from previous runs are replayed first, and
+	 * any interesting inputs found are added to the corpus.
+	 *
+	 * @param store The persistent corpus (or <code>null</code> if none).
+	 */
+	public TinyBoyInputGenerator(@Nullable CorpusFile store) {
+		this(store, null);
+	}
+
+	/**
+	 * Create new input generator for the TinyBoy simulation which is warm-started
+	 * from a persistent corpus and, if an analysis of the firmware is given,
+	 * directed towards the branches not yet covered.
+	 *
+	 * @param store    The persistent corpus (or <code>null</code> if none).
+	 * @param analysis Analysis of the firmware being tested (or <code>null</code>
+	 *                 if selection should not be directed).
+	 */
+	public TinyBoyInputGenerator(@Nullable CorpusFile store, @Nullable FirmwareAnalysis analysis) {
+		this(store, analysis, MutationStrategy.EXTEND);
+	}
+
+	/**
+	 * Create new input generator for the TinyBoy simulation which is warm-started
+	 * from a persistent corpus, optionally directed towards the branches not yet
+	 * covered, and which mutates inputs according to a given strategy.
+	 *
+	 * @param store    The persistent corpus (or <code>null</code> if none).
+	 * @param analysis Analysis of the firmware being tested (or <code>null</code>
+	 *                 if selection should not be directed).
+	 * @param strategy Determines which mutation operators are used.
+	 */
+	public TinyBoyInputGenerator(@Nullable CorpusFile store, @Nullable FirmwareAnalysis analysis,
+			MutationStrategy strategy) {
+		this.store = store;
+		this.branches = analysis != null ? analysis.newCoverage() : null;
+		this.strategy = strategy;
+		this.mutators = strategy.getMutators();
+		this.bandit = new Bandit(this.mutators.length);
+		// Initially, try every button on its own.
+		for (int i = 0; i != NUM_BUTTONS; ++i) {
+			this.worklist.add(new PackedInputSequence(BUTTONS[i]));
+		}
+		if (store != null) {
+			// Replay those stored inputs needed to reach previous coverage.
+			List<CorpusFile.Entry> entries = cover(store.getEntries());
+			for (int i = entries.size() - 1; i >= 0; --i) {
+				PackedInputSequence input = entries.get(i).getInput();
+				this.replayed.add(input);
+				this.worklist.add(input);
+			}
+		}
+	}
+
+	@Override
+	public int getCorpusSize() {
+		return this.corpus.size();
+	}
+
+	@Override
+	public boolean plateaued() {
+		// Switch to the fallback strategy, if there is one.
+		MutationStrategy next = this.strategy.getFallback();
+		if (next == null) {
+			return false;
+		}
+		this.strategy = next;
+		this.mutators = this.strategy.getMutators();
+		this.bandit = new Bandit(this.mutators.length);
+		// Feedback for inputs still being fuzzed refers to the old operators.
+		this.operators.clear();
+		return true;
 	}
 
 	@Override
 	public boolean hasMore() {
-		return this.worklist.size() > 0;
+		return this.worklist.size() > 0 || this.corpus.size() > 0;
 	}
 
 	@Override
-	public @Nullable TinyBoyInputSequence generate() {
+	public @Nullable PackedInputSequence generate() {
+		if (++this.sinceTrial >= MINIMISE_INTERVAL) {
+			PackedInputSequence trial = nextTrial();
+			if (trial != null) {
+				this.sinceTrial = 0;
+				return trial;
+			}
+		}
+		if (this.worklist.isEmpty() && !this.corpus.isEmpty()) {
+			// Refill worklist by mutating a seed from the corpus.
+			Seed seed = select();
+			seed.extensions++;
+			reweigh(seed);
+			int arm = this.bandit.select();
+			ArrayList<PackedInputSequence> children = new ArrayList<>();
+			this.mutators[arm].mutate(seed.input, this::other, this.random, children);
+			for (int i = 0; i != children.size(); ++i) {
+				PackedInputSequence child = children.get(i);
+				if (i > 0) {
+					// Each child is rewarded separately, so counts as a pull.
+					this.bandit.pull(arm);
+				}
+				this.parents.put(child, seed);
+				this.operators.put(child, Integer.valueOf(arm));
+				this.worklist.add(child);
+			}
+		}
 		if (!this.worklist.isEmpty()) {
 			// remove last item from worklist
 			return this.worklist.remove(this.worklist.size() - 1);
@@ -52,21 +294,324 @@ public class TinyBoyInputGenerator implements AutomatedTester.InputGenerator<Tin
 		return null;
 	}
 
+	@Override
+	public void discard(PackedInputSequence input) {
+		// Nothing new to attribute to the seed it was derived from.
+		this.parents.remove(input);
+		Integer arm = this.operators.remove(input);
+		if (arm != null) {
+			this.bandit.reward(arm.intValue(), 0);
+		}
+		InputMinimiser m = this.minimiser;
+		if (m != null && input == m.getCandidate()) {
+			m.reject();
+		}
+	}
+
+	@Override
+	public boolean isAwaited(PackedInputSequence input) {
+		// Trials of a shortened seed must be recorded, even if nothing new.
+		InputMinimiser m = this.minimiser;
+		return m != null && input == m.getCandidate();
+	}
+
+	@Override
+	public void record(PackedInputSequence input, BitSet coverage, byte[] state) {
+		record(input, coverage, EdgeCoverage.EMPTY, state);
+	}
+
+	@Override
+	public void record(PackedInputSequence input, BitSet coverage, EdgeCoverage edges, byte[] state) {
+		record(input, coverage, edges, new MemoryView(state));
+	}
+
 	/**
 	 * A record returned from the fuzzer indicating the coverage and final state
-	 * obtained for a given input sequence.
+	 * obtained for a given input sequence. An input is retained in the corpus if
+	 * it covers something not previously covered (i.e. an instruction, an edge or
+	 * an edge hit count bucket). In such case, any existing seeds whose coverage
+	 * is subsumed by it are evicted. Otherwise, an input is retained only if the
+	 * combination of its final state and coverage has not been seen before. This
+	 * ensures inputs which converge on the same state are not all extended. At
+	 * most <code>MAX_STATEFUL</code> such seeds are retained, and they are evicted
+	 * when subsumed just like any other. If the input is a trial of a shortened
+	 * seed, the shortened sequence (along with its coverage) replaces the seed
+	 * when it obtains (at least) the seed's instruction coverage.
 	 */
 	@Override
-	public void record(TinyBoyInputSequence input, BitSet coverage, byte[] state) {
-		// NOTE: this method is called when fuzzing has finished for a given input. It
-		// produces three potentially useful items: firstly, the input sequence that was
-		// used for fuzzing; second, the set of instructions which were covered when
-		// executing that sequence; finally, the complete state of the machine's RAM at
-		// the end of the run.
-		//
-		// At this point, you will want to use the feedback gained from fuzzing to help
-		// prune the space of inputs to try next. A few helper methods are given below,
-		// but you will need to write a lot more.
+	public void record(PackedInputSequence input, BitSet coverage, EdgeCoverage edges, MemoryView state) {
+		record(input, coverage, edges, state, StateHash.fingerprint(state, coverage));
+	}
+
+	@Override
+	public void record(PackedInputSequence input, BitSet coverage, EdgeCoverage edges, MemoryView state,
+			long fingerprint) {
+		@Nullable Seed parent = this.parents.remove(input);
+		// Determine how many new bits this input covered
+		BitSet fresh = (BitSet) coverage.clone();
+		fresh.andNot(this.coverage);
+		int novelty = fresh.cardinality();
+		for (int i = 0; i != edges.size(); ++i) {
+			int index = edges.getIndex(i);
+			byte bucket = edges.getBucket(i);
+			if ((this.edges[index] & bucket) == 0) {
+				this.edges[index] |= bucket;
+				novelty = novelty + 1;
+			}
+		}
+		// Attribute result to the seed this input was derived from
+		if (parent != null) {
+			parent.gain += novelty;
+			reweigh(parent);
+		}
+		// Reward the operator which generated this input
+		Integer arm = this.operators.remove(input);
+		if (arm != null) {
+			this.bandit.reward(arm.intValue(), novelty > 0 ? 1 : 0);
+		}
+		// Determine whether this input shortens the seed being minimised
+		InputMinimiser m = this.minimiser;
+		Seed target = this.minimising;
+		@Nullable Seed replaced = null;
+		if (m != null && target != null && input == m.getCandidate()) {
+			if (subsumedBy(target.coverage, coverage)) {
+				m.accept();
+				target.input = input;
+				target.coverage = (BitSet) coverage.clone();
+				target.edges = edges;
+				target.distanceFor = null;
+				replaced = target;
+			} else {
+				m.reject();
+			}
+			if (novelty == 0) {
+				// Nothing new to retain, since this only repeats part of a seed.
+				return;
+			}
+		}
+		// Determine whether this input reached a state not seen before
+		boolean distinct = this.states.add(fingerprint);
+		if (novelty > 0) {
+			this.coverage.or(coverage);
+			FirmwareAnalysis.Coverage b = this.branches;
+			if (b != null) {
+				b.record(coverage);
+			}
+			// Evict any seeds which are now dominated
+			for (int i = this.corpus.size() - 1; i >= 0; --i) {
+				Seed seed = this.corpus.get(i);
+				if (seed != replaced && subsumedBy(seed.coverage, coverage) && seed.edges.subsumedBy(edges)) {
+					evict(seed);
+				}
+			}
+			if (replaced != null) {
+				// The seed being minimised now holds this input, so credit it instead.
+				replaced.gain += novelty;
+				reweigh(replaced);
+			} else {
+				Seed seed = new Seed(input, coverage, edges, novelty);
+				add(seed);
+				if (input.length() > 1) {
+					this.unminimised.add(seed);
+				}
+			}
+			CorpusFile s = this.store;
+			if (s != null && !this.replayed.contains(input)) {
+				s.append(input, coverage);
+			}
+		} else if (distinct) {
+			// Although nothing new was covered, the machine is in a different state
+			// from any seen before. Hence, extending this input may lead somewhere new.
+			if (this.stateful.size() >= MAX_STATEFUL) {
+				// NOTE: the oldest may already have been evicted when subsumed.
+				Seed oldest = this.stateful.poll();
+				if (oldest.slot >= 0) {
+					evict(oldest);
+				}
+			}
+			Seed seed = new Seed(input, coverage, edges, 0);
+			this.stateful.add(seed);
+			add(seed);
+		}
+	}
+
+	/**
+	 * Select a seed from the corpus to extend. Seeds are chosen at random, but
+	 * weighted by how productive they have been. In directed mode, most
+	 * selections are further weighted by how close each seed came to a branch
+	 * not yet covered, such that the weight halves for each step further away
+	 * than the closest seed. Since the closest seed changes as branches are
+	 * covered, such selections must weigh the whole corpus afresh. Otherwise,
+	 * the running weights are used.
+	 *
+	 * @return The selected seed.
+	 */
+	private Seed select() {
+		FirmwareAnalysis.Coverage b = this.branches;
+		if (b == null || this.random.nextDouble() >= DIRECTED_RATIO) {
+			Seed seed = this.slots.get(this.weights.find(this.random.nextDouble() * this.weights.total()));
+			assert seed != null;
+			return seed;
+		}
+		int[] distances = b.getBranchDistances();
+		int closest = Integer.MAX_VALUE;
+		for (int i = 0; i != this.corpus.size(); ++i) {
+			closest = Math.min(closest, this.corpus.get(i).distance(distances));
+		}
+		double[] ws = new double[this.corpus.size()];
+		double total = 0;
+		for (int i = 0; i != this.corpus.size(); ++i) {
+			Seed seed = this.corpus.get(i);
+			double weight = seed.weight();
+			if (closest != Integer.MAX_VALUE) {
+				weight = Math.scalb(weight, -Math.min(64, seed.distance(distances) - closest));
+			}
+			ws[i] = weight;
+			total += weight;
+		}
+		double r = this.random.nextDouble() * total;
+		for (int i = 0; i != this.corpus.size(); ++i) {
+			r -= ws[i];
+			if (r <= 0) {
+				return this.corpus.get(i);
+			}
+		}
+		// Can only get here through rounding error
+		return this.corpus.get(this.corpus.size() - 1);
+	}
+
+	/**
+	 * Add a seed to the corpus, giving it a free slot in the running weights.
+	 *
+	 * @param seed The seed to add.
+	 */
+	private void add(Seed seed) {
+		Integer slot = this.free.poll();
+		if (slot != null) {
+			seed.slot = slot.intValue();
+			this.slots.set(seed.slot, seed);
+		} else {
+			seed.slot = this.slots.size();
+			this.slots.add(seed);
+		}
+		seed.index = this.corpus.size();
+		this.corpus.add(seed);
+		this.weights.set(seed.slot, seed.weight());
+	}
+
+	/**
+	 * Evict a given seed from the corpus, freeing its slot. The last seed in the
+	 * corpus takes its position, such that this takes constant time.
+	 *
+	 * @param seed The seed to evict.
+	 */
+	private void evict(Seed seed) {
+		Seed last = this.corpus.remove(this.corpus.size() - 1);
+		if (last != seed) {
+			this.corpus.set(seed.index, last);
+			last.index = seed.index;
+		}
+		seed.index = -1;
+		this.weights.set(seed.slot, 0);
+		this.slots.set(seed.slot, null);
+		this.free.add(Integer.valueOf(seed.slot));
+		seed.slot = -1;
+	}
+
+	/**
+	 * Update the running weight of a given seed, after its statistics changed.
+	 * Seeds already evicted are ignored.
+	 *
+	 * @param seed The seed in question.
+	 */
+	private void reweigh(Seed seed) {
+		if (seed.slot >= 0) {
+			this.weights.set(seed.slot, seed.weight());
+		}
+	}
+
+	/**
+	 * Choose a seed from the corpus at random (without weighting), for operators
+	 * which combine two inputs.
+	 *
+	 * @return The input of the seed chosen.
+	 */
+	private PackedInputSequence other() {
+		return this.corpus.get(this.random.nextInt(this.corpus.size())).input;
+	}
+
+	/**
+	 * Get the next trial of a shortened seed. Seeds are minimised one at a time,
+	 * with at most one trial being tested at once. Those evicted from the corpus
+	 * before (or whilst) being minimised are skipped. Once a seed is fully
+	 * minimised, its shortened sequence is written to the persistent corpus.
+	 *
+	 * @return The next trial, or <code>null</code> if there is none to test yet.
+	 */
+	private @Nullable PackedInputSequence nextTrial() {
+		while (true) {
+			InputMinimiser m = this.minimiser;
+			Seed seed = this.minimising;
+			if (m == null || seed == null) {
+				seed = this.unminimised.poll();
+				if (seed == null) {
+					return null;
+				}
+				m = new InputMinimiser(seed.input);
+				this.minimising = seed;
+				this.minimiser = m;
+			}
+			if (m.getCandidate() != null) {
+				// Still waiting on the last trial
+				return null;
+			}
+			PackedInputSequence trial = seed.slot >= 0 ? m.next() : null;
+			if (trial != null) {
+				return trial;
+			}
+			CorpusFile s = this.store;
+			if (s != null && m.isDone() && seed.input != m.getOriginal()) {
+				s.append(seed.input, seed.coverage);
+			}
+			this.minimising = null;
+			this.minimiser = null;
+		}
+	}
+
+	/**
+	 * Select a subset of entries which together obtain the same coverage as all
+	 * of them. This is done greedily by repeatedly picking the entry covering the
+	 * most which is not already covered, where shorter entries are preferred on
+	 * a tie (e.g. a seed stored both before and after it was minimised). Entries
+	 * are returned in the order picked.
+	 *
+	 * @param entries The entries to select from.
+	 * @return The selected entries.
+	 */
+	private static List<CorpusFile.Entry> cover(List<CorpusFile.Entry> entries) {
+		ArrayList<CorpusFile.Entry> remaining = new ArrayList<>(entries);
+		ArrayList<CorpusFile.Entry> selected = new ArrayList<>();
+		BitSet covered = new BitSet();
+		while (true) {
+			CorpusFile.Entry best = null;
+			int bestGain = 0;
+			for (int i = 0; i != remaining.size(); ++i) {
+				BitSet fresh = (BitSet) remaining.get(i).getCoverage().clone();
+				fresh.andNot(covered);
+				int gain = fresh.cardinality();
+				if (gain > bestGain || (gain == bestGain && best != null
+						&& remaining.get(i).getInput().length() < best.getInput().length())) {
+					best = remaining.get(i);
+					bestGain = gain;
+				}
+			}
+			if (best == null) {
+				return selected;
+			}
+			selected.add(best);
+			remaining.remove(best);
+			covered.or(best.getCoverage());
+		}
 	}
 
 	/**
@@ -100,4 +645,104 @@ public class TinyBoyInputGenerator implements AutomatedTester.InputGenerator<Tin
 			inputs.remove(inputs.size() - 1);
 		}
 	}
+
+	/**
+	 * Represents an input retained in the corpus, along with the coverage it
+	 * obtained and some statistics on how productive it has been.
+	 */
+	private static class Seed {
+		/**
+		 * The input sequence itself. This is replaced whenever a shorter sequence
+		 * obtaining the same coverage is found.
+		 */
+		private PackedInputSequence input;
+		/**
+		 * The coverage obtained by this input (replaced along with the input).
+		 */
+		private BitSet coverage;
+		/**
+		 * The edge coverage obtained by this input (replaced along with the input).
+		 */
+		private EdgeCoverage edges;
+		/**
+		 * The number of new coverage bits this input covered when recorded.
+		 */
+		private final int novelty;
+		/**
+		 * The number of new coverage bits found by inputs derived from this seed.
+		 */
+		private int gain;
+		/**
+		 * The number of times this seed has been extended.
+		 */
+		private int extensions;
+		/**
+		 * Slot holding this seed's running weight, or <code>-1</code> once evicted.
+		 */
+		private int slot = -1;
+		/**
+		 * Position of this seed in the corpus, or <code>-1</code> once evicted.
+		 */
+		private int index = -1;
+		/**
+		 * Distance from this seed to the nearest uncovered branch, as last computed.
+		 */
+		private int distance;
+		/**
+		 * Distances against which <code>distance</code> was computed.
+		 */
+		private int @Nullable [] distanceFor;
+
+		/**
+		 * Construct a new seed. The coverage is copied, since it belongs to the
+		 * result being recorded.
+		 *
+		 * @param input    The input sequence.
+		 * @param coverage The coverage it obtained.
+		 * @param edges    The edge coverage it obtained.
+		 * @param novelty  The number of new coverage bits obtained.
+		 */
+		public Seed(PackedInputSequence input, BitSet coverage, EdgeCoverage edges, int novelty) {
+			this.input = input;
+			this.coverage = (BitSet) coverage.clone();
+			this.edges = edges;
+			this.novelty = novelty;
+		}
+
+		/**
+		 * Determine the selection weight of this seed. Seeds which found (or led to)
+		 * more new coverage are favoured, whilst those which have been extended many
+		 * times are gradually deprioritised.
+		 *
+		 * @return Selection weight (always positive).
+		 */
+		public double weight() {
+			return (1.0 + this.novelty + this.gain) / (1.0 + this.extensions);
+		}
+
+		/**
+		 * Determine the distance from the code executed by this seed to the nearest
+		 * branch not yet covered. This is recomputed only when the distances
+		 * themselves change.
+		 *
+		 * @param distances Distance from each (word) address to the nearest
+		 *                  uncovered branch.
+		 * @return Smallest distance over all instructions executed.
+		 */
+		public int distance(int[] distances) {
+			if (this.distanceFor != distances) {
+				int d = Integer.MAX_VALUE;
+				// NOTE: an instruction is executed when its first byte is (i.e. even bits).
+				for (int i = this.coverage.nextSetBit(0); i >= 0 && d != 0; i = this.coverage.nextSetBit(i + 1)) {
+					int pc = i >>> 1;
+					if ((i & 1) == 0 && pc < distances.length) {
+						d = Math.min(d, distances[pc]);
+					}
+				}
+				this.distance = d;
+				this.distanceFor = distances;
+			}
+			return this.distance;
+		}
+	}
 }
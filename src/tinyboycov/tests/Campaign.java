@@ -0,0 +1,361 @@
+package tinyboycov.tests;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import javr.io.HexFile;
+import tinyboycov.core.CorpusFile;
+import tinyboycov.core.PackedInputSequence;
+import tinyboycov.core.TinyBoyInputGenerator;
+import tinyboycov.util.CoverageTimeline;
+import tinyboycov.util.FirmwareAnalysis;
+import tinyboycov.util.FuzzTester;
+
+/**
+ * Fuzz tests a batch of firmware images within a single JVM, sharing one pool
+ * of worker threads between them. Each worker repeatedly picks the unfinished
+ * firmware which has so far received the least CPU time, and tests a single
+ * input for it. Thus, every firmware receives a fair share of the workers
+ * whilst it is running, and those which finish early (i.e. by reaching their
+ * target or plateauing) hand their share over to the rest. Any firmware which
+ * exceeds the time limit is stopped. Once all are finished, a combined report
+ * is written.
+ */
+public class Campaign {
+	/**
+	 * Default firmware images (and their targets) used when none is given, which
+	 * match those of <code>Part3_Tests</code> and <code>Part4_Tests</code>.
+	 */
+	private static final String[] DEFAULT_TARGETS = { "blocks_1.hex:95", "blocks_2.hex:95", "blocks_3.hex:95", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			"blocks_4.hex:95", "blocks_5.hex:95", "blocks_6.hex:95", "blocks_7.hex:95", "blocker_1.hex:85", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			"blocker_2.hex:85", "numbers_1.hex:85", "snake.hex:85", "tetris.hex:85" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	/**
+	 * Specifies where to find the firmware images.
+	 */
+	private static final File FIRMWARE_DIR = new File("tests"); //$NON-NLS-1$
+	/**
+	 * Specifies where to keep the persistent corpus of inputs for each firmware.
+	 */
+	private static final File CORPUS_DIR = new File("corpus"); //$NON-NLS-1$
+	/**
+	 * Specifies where to write the coverage timeline of each firmware.
+	 */
+	private static final File TIMELINE_DIR = new File("timelines"); //$NON-NLS-1$
+	/**
+	 * Number of worker threads shared between all firmware.
+	 */
+	private final int nthreads;
+	/**
+	 * Maximum time (in milliseconds) each firmware may run for.
+	 */
+	private final long timeout;
+	/**
+	 * The firmware being tested.
+	 */
+	private final ArrayList<Target> targets = new ArrayList<>();
+	/**
+	 * Time at which the campaign started.
+	 */
+	private long start;
+
+	/**
+	 * Construct a new (empty) campaign.
+	 *
+	 * @param nthreads Number of worker threads to share.
+	 * @param timeout  Maximum time (in milliseconds) each firmware may run for.
+	 */
+	public Campaign(int nthreads, long timeout) {
+		this.nthreads = nthreads;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Add a firmware image to this campaign.
+	 *
+	 * @param name     Name used in the report.
+	 * @param firmware The firmware image.
+	 * @param target   The target branch coverage (as a percentage).
+	 * @throws IOException If its persistent corpus cannot be opened.
+	 */
+	public void add(String name, HexFile firmware, double target) throws IOException {
+		this.targets.add(new Target(name, firmware, target));
+	}
+
+	/**
+	 * Run the campaign until every firmware is finished.
+	 *
+	 * @throws InterruptedException If a worker thread is interrupted.
+	 * @throws ExecutionException   If a worker thread fails.
+	 */
+	public void run() throws InterruptedException, ExecutionException {
+		this.start = System.currentTimeMillis();
+		for (Target t : this.targets) {
+			t.session = t.tester.start(t.target);
+		}
+		ExecutorService pool = Executors.newFixedThreadPool(this.nthreads);
+		try {
+			ArrayList<Future<?>> workers = new ArrayList<>();
+			for (int i = 0; i != this.nthreads; ++i) {
+				int worker = i;
+				workers.add(pool.submit(() -> work(worker)));
+			}
+			for (Future<?> w : workers) {
+				w.get();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * The main loop of a worker thread, which tests inputs for whichever
+	 * firmware is most in need until all are finished.
+	 *
+	 * @param worker Index of this worker.
+	 * @return Nothing.
+	 */
+	private @Nullable Void work(int worker) {
+		Target stalled = null;
+		Target t;
+		while ((t = select(stalled)) != null) {
+			long now = System.nanoTime();
+			FuzzTester<PackedInputSequence>.Session session = session(t);
+			boolean tested = session.step(worker);
+			t.used.add(System.nanoTime() - now);
+			if (tested) {
+				stalled = null;
+			} else if (session.isDone()) {
+				finish(t);
+			} else {
+				// Nothing available for this firmware yet, so try another.
+				stalled = t;
+				Thread.yield();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Select the unfinished firmware which has received the least CPU time so
+	 * far. Any which have exceeded the time limit are stopped along the way.
+	 *
+	 * @param stalled Firmware to avoid (if possible), since it has nothing to
+	 *                offer right now.
+	 * @return The selected firmware, or <code>null</code> if all are finished.
+	 */
+	private synchronized @Nullable Target select(@Nullable Target stalled) {
+		boolean expired = (System.currentTimeMillis() - this.start) >= this.timeout;
+		Target best = null;
+		for (Target t : this.targets) {
+			if (t.finished) {
+				continue;
+			} else if (session(t).isDone()) {
+				finish(t);
+				continue;
+			} else if (expired) {
+				session(t).stop("timeout"); //$NON-NLS-1$
+				finish(t);
+				continue;
+			}
+			if (best == null || best == stalled || (t != stalled && t.used.sum() < best.used.sum())) {
+				best = t;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Mark a given firmware as finished, recording when this happened.
+	 *
+	 * @param t The firmware in question.
+	 */
+	private synchronized void finish(Target t) {
+		if (!t.finished) {
+			t.finished = true;
+			t.time = System.currentTimeMillis() - this.start;
+			FuzzTester<PackedInputSequence>.Session session = session(t);
+			session.finish();
+			System.err.println("Finished " + t.name + " (" + session.getOutcome() + ") with coverage " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					+ format(session.getBranchCoverage()) + "% after " + t.time + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/**
+	 * Write the combined report of this campaign (as CSV), along with the
+	 * coverage timeline of each firmware. This also releases all resources held
+	 * by the campaign.
+	 *
+	 * @param report The file to write the report into.
+	 * @return True if every firmware reached its target.
+	 * @throws IOException If something cannot be written.
+	 */
+	public boolean report(File report) throws IOException {
+		boolean passed = true;
+		try (PrintWriter out = new PrintWriter(new FileWriter(report))) {
+			out.println("firmware,target,branch_coverage,instruction_coverage,inputs,cpu_ms,time_ms,outcome"); //$NON-NLS-1$
+			for (Target t : this.targets) {
+				FuzzTester<PackedInputSequence>.Session session = session(t);
+				FirmwareAnalysis.Coverage coverage = session.getCoverage();
+				boolean reached = coverage.getBranchCoverage() >= t.target;
+				passed &= reached;
+				String row = t.name + "," + format(t.target) + "," + format(coverage.getBranchCoverage()) + "," //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+						+ format(coverage.getInstructionCoverage()) + "," + t.tester.getMetrics().getInputs() + "," //$NON-NLS-1$ //$NON-NLS-2$
+						+ (t.used.sum() / 1_000_000) + "," + t.time + "," + session.getOutcome(); //$NON-NLS-1$ //$NON-NLS-2$
+				out.println(row);
+				System.out.println((reached ? "PASS " : "FAIL ") + row.replace(',', ' ')); //$NON-NLS-1$ //$NON-NLS-2$
+				CoverageTimeline timeline = t.tester.getTimeline();
+				if (timeline != null) {
+					timeline.writeTo(new File(TIMELINE_DIR, t.name + ".csv")); //$NON-NLS-1$
+				}
+			}
+		} finally {
+			for (Target t : this.targets) {
+				t.tester.destroy();
+				t.store.close();
+			}
+		}
+		return passed;
+	}
+
+	/**
+	 * Get the session of a given firmware, which must have been started.
+	 *
+	 * @param t The firmware in question.
+	 * @return Its session.
+	 */
+	private static FuzzTester<PackedInputSequence>.Session session(Target t) {
+		FuzzTester<PackedInputSequence>.Session s = t.session;
+		if (s == null) {
+			throw new IllegalStateException("campaign not started"); //$NON-NLS-1$
+		}
+		return s;
+	}
+
+	/**
+	 * Format a percentage to one decimal place.
+	 *
+	 * @param value The percentage.
+	 * @return The formatted percentage.
+	 */
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.1f", Double.valueOf(value)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Entry point for running a campaign. Each argument identifies a firmware
+	 * image in the <code>tests/</code> directory along with its target (e.g.
+	 * <code>snake.hex:85</code>), where all of those used by
+	 * <code>Part3_Tests</code> and <code>Part4_Tests</code> are run by default.
+	 * The options <code>-j</code> (number of threads), <code>-t</code> (time limit
+	 * per firmware in seconds) and <code>-o</code> (report file) are also
+	 * accepted.
+	 *
+	 * @param args Command-line arguments.
+	 * @throws Exception If something goes wrong.
+	 */
+	public static void main(String[] args) throws Exception {
+		int nthreads = Runtime.getRuntime().availableProcessors();
+		long timeout = 300;
+		File report = new File("campaign.csv"); //$NON-NLS-1$
+		ArrayList<String> files = new ArrayList<>();
+		for (int i = 0; i < args.length; ++i) {
+			switch (args[i]) {
+			case "-j": //$NON-NLS-1$
+				nthreads = Integer.parseInt(args[++i]);
+				break;
+			case "-t": //$NON-NLS-1$
+				timeout = Long.parseLong(args[++i]);
+				break;
+			case "-o": //$NON-NLS-1$
+				report = new File(args[++i]);
+				break;
+			default:
+				files.add(args[i]);
+			}
+		}
+		if (files.isEmpty()) {
+			files.addAll(Arrays.asList(DEFAULT_TARGETS));
+		}
+		Campaign campaign = new Campaign(nthreads, timeout * 1000);
+		for (String file : files) {
+			int colon = file.lastIndexOf(':');
+			String name = colon < 0 ? file : file.substring(0, colon);
+			double target = colon < 0 ? 100 : Double.parseDouble(file.substring(colon + 1));
+			try (FileReader fr = new FileReader(new File(FIRMWARE_DIR, name))) {
+				campaign.add(name, new HexFile.Reader(fr).readAll(), target);
+			}
+		}
+		System.err.println("Running " + files.size() + " firmware images on " + nthreads + " threads."); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		campaign.run();
+		boolean passed = campaign.report(report);
+		System.exit(passed ? 0 : 1);
+	}
+
+	/**
+	 * A firmware image being tested as part of a campaign.
+	 */
+	private final class Target {
+		/**
+		 * Name used in the report.
+		 */
+		private final String name;
+		/**
+		 * The target branch coverage (as a percentage).
+		 */
+		private final double target;
+		/**
+		 * The persistent corpus of inputs for this firmware.
+		 */
+		private final CorpusFile store;
+		/**
+		 * The tester for this firmware, which has one emulator per worker.
+		 */
+		private final FuzzTester<PackedInputSequence> tester;
+		/**
+		 * The current session, or <code>null</code> if not started.
+		 */
+		private FuzzTester<PackedInputSequence>.@Nullable Session session;
+		/**
+		 * CPU time (in nanoseconds) spent on this firmware so far.
+		 */
+		private final LongAdder used = new LongAdder();
+		/**
+		 * Indicates this firmware is finished.
+		 */
+		private boolean finished;
+		/**
+		 * Time (in milliseconds) from the start of the campaign until this firmware
+		 * finished.
+		 */
+		private long time;
+
+		/**
+		 * Construct a new target.
+		 *
+		 * @param name     Name used in the report.
+		 * @param firmware The firmware image.
+		 * @param target   The target branch coverage (as a percentage).
+		 * @throws IOException If its persistent corpus cannot be opened.
+		 */
+		public Target(String name, HexFile firmware, double target) throws IOException {
+			this.name = name;
+			this.target = target;
+			this.store = CorpusFile.open(CORPUS_DIR, firmware);
+			TinyBoyInputGenerator generator = new TinyBoyInputGenerator(this.store);
+			this.tester = new FuzzTester<>(firmware, generator, false, Campaign.this.nthreads);
+		}
+	}
+}
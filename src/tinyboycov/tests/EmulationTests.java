@@ -0,0 +1,232 @@
+package tinyboycov.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import javr.io.HexFile;
+import tinyboy.core.ControlPad;
+import tinyboy.util.AutomatedTester;
+import tinyboycov.core.PackedInputSequence;
+import tinyboycov.util.EdgeCoverage;
+import tinyboycov.util.FuzzTester;
+
+/**
+ * Tests that the optimisations made to emulation do not affect the results
+ * obtained. That is, fast-forwarding polling loops, resuming from checkpoints
+ * and executing translated code must give exactly the same coverage, edges and
+ * final state as plain interpretation of every input from reset.
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class EmulationTests {
+	/**
+	 * Number of random inputs to compare on each firmware.
+	 */
+	private static final int NINPUTS = 100;
+
+	/**
+	 * A Test
+	 * @throws Exception If something goes wrong.
+	 */
+	@Test
+	public void test_01() throws Exception {
+		checkEquivalent("blocks_1.hex", false); //$NON-NLS-1$
+	}
+
+	/**
+	 * A Test
+	 * @throws Exception If something goes wrong.
+	 */
+	@Test
+	public void test_02() throws Exception {
+		checkEquivalent("numbers_1.hex", false); //$NON-NLS-1$
+	}
+
+	/**
+	 * A Test
+	 * @throws Exception If something goes wrong.
+	 */
+	@Test
+	public void test_03() throws Exception {
+		checkEquivalent("snake.hex", false); //$NON-NLS-1$
+	}
+
+	/**
+	 * A Test
+	 * @throws Exception If something goes wrong.
+	 */
+	@Test
+	public void test_04() throws Exception {
+		checkEquivalent("tetris.hex", false); //$NON-NLS-1$
+	}
+
+	/**
+	 * A Test
+	 * @throws Exception If something goes wrong.
+	 */
+	@Test
+	public void test_05() throws Exception {
+		checkEquivalent("blocks_1.hex", true); //$NON-NLS-1$
+	}
+
+	/**
+	 * A Test
+	 * @throws Exception If something goes wrong.
+	 */
+	@Test
+	public void test_06() throws Exception {
+		checkEquivalent("numbers_1.hex", true); //$NON-NLS-1$
+	}
+
+	/**
+	 * A Test
+	 * @throws Exception If something goes wrong.
+	 */
+	@Test
+	public void test_07() throws Exception {
+		checkEquivalent("snake.hex", true); //$NON-NLS-1$
+	}
+
+	/**
+	 * A Test
+	 * @throws Exception If something goes wrong.
+	 */
+	@Test
+	public void test_08() throws Exception {
+		checkEquivalent("tetris.hex", true); //$NON-NLS-1$
+	}
+
+	/**
+	 * Check that a given firmware gives the same results for a sequence of random
+	 * inputs with fast-forwarding and checkpointing (and, optionally, translation)
+	 * enabled, as without. Most inputs extend an earlier one, such that they can
+	 * be resumed from its checkpoint, and some hold a button for several steps,
+	 * such that polling loops are fast-forwarded.
+	 *
+	 * @param filename  File name of firmware image.
+	 * @param translate Flag to enable translation.
+	 * @throws IOException If the firmware cannot be read.
+	 */
+	private static void checkEquivalent(String filename, boolean translate) throws IOException {
+		HexFile firmware = load(filename);
+		boolean fastForward = FuzzTester.FAST_FORWARD;
+		boolean translated = FuzzTester.TRANSLATE;
+		FuzzTester<PackedInputSequence> plain;
+		FuzzTester<PackedInputSequence> optimised;
+		try {
+			FuzzTester.FAST_FORWARD = false;
+			FuzzTester.TRANSLATE = false;
+			plain = new FuzzTester<>(firmware, new NoInputs(), false, 1, false);
+			FuzzTester.FAST_FORWARD = true;
+			FuzzTester.TRANSLATE = translate;
+			optimised = new FuzzTester<>(firmware, new NoInputs(), false, 1, true);
+		} finally {
+			FuzzTester.FAST_FORWARD = fastForward;
+			FuzzTester.TRANSLATE = translated;
+		}
+		try {
+			Random random = new Random(filename.hashCode());
+			ControlPad.Button[] buttons = ControlPad.Button.values();
+			ArrayList<PackedInputSequence> pool = new ArrayList<>();
+			for (int i = 0; i != NINPUTS; ++i) {
+				PackedInputSequence input;
+				if (pool.isEmpty() || random.nextInt(4) == 0) {
+					ControlPad.Button[] steps = new ControlPad.Button[1 + random.nextInt(20)];
+					for (int j = 0; j != steps.length; ++j) {
+						steps[j] = buttons[random.nextInt(buttons.length)];
+					}
+					input = new PackedInputSequence(steps);
+				} else {
+					PackedInputSequence parent = pool.get(random.nextInt(pool.size()));
+					ControlPad.Button button = buttons[random.nextInt(buttons.length)];
+					input = random.nextBoolean() ? parent.append(button) : parent.append(button, 1 + random.nextInt(10));
+				}
+				pool.add(input);
+				String name = filename + " " + input; //$NON-NLS-1$
+				FuzzTester.Result expected = plain.fuzzTest(copy(input));
+				FuzzTester.Result actual = optimised.fuzzTest(input);
+				assertEquals(name, expected.getCodeExecuted(), actual.getCodeExecuted());
+				assertEdgesEqual(name, expected.getEdges(), actual.getEdges());
+				assertArrayEquals(name, expected.getState(), actual.getState());
+			}
+		} finally {
+			plain.destroy();
+			optimised.destroy();
+		}
+	}
+
+	/**
+	 * Check that two sets of edges are identical, including their hit count
+	 * buckets.
+	 *
+	 * @param name     Name of the input being compared.
+	 * @param expected The edges expected.
+	 * @param actual   The edges obtained.
+	 */
+	private static void assertEdgesEqual(String name, EdgeCoverage expected, EdgeCoverage actual) {
+		assertEquals(name, expected.size(), actual.size());
+		for (int i = 0; i != expected.size(); ++i) {
+			assertEquals(name, expected.getIndex(i), actual.getIndex(i));
+			assertEquals(name, expected.getBucket(i), actual.getBucket(i));
+		}
+	}
+
+	/**
+	 * Copy a given input sequence, such that it is not derived from any other
+	 * (and, hence, cannot be resumed from a checkpoint).
+	 *
+	 * @param input The sequence to copy.
+	 * @return The copy, whose position is at the start.
+	 */
+	private static PackedInputSequence copy(PackedInputSequence input) {
+		ControlPad.Button[] steps = new ControlPad.Button[input.length()];
+		for (int i = 0; i != steps.length; ++i) {
+			steps[i] = input.get(i);
+		}
+		return new PackedInputSequence(steps);
+	}
+
+	/**
+	 * Load a given firmware image from the test directory.
+	 *
+	 * @param filename File name of firmware image.
+	 * @return The firmware image.
+	 * @throws IOException If the firmware cannot be read.
+	 */
+	private static HexFile load(String filename) throws IOException {
+		try (FileReader fr = new FileReader("tests" + File.separator + filename)) { //$NON-NLS-1$
+			HexFile firmware = new HexFile.Reader(fr).readAll();
+			assert firmware != null;
+			return firmware;
+		}
+	}
+
+	/**
+	 * A generator which generates nothing, since inputs are tested directly.
+	 */
+	private static final class NoInputs implements AutomatedTester.InputGenerator<PackedInputSequence> {
+		@Override
+		public PackedInputSequence generate() {
+			throw new IllegalStateException();
+		}
+
+		@Override
+		public void record(PackedInputSequence input, BitSet coverage, byte[] state) {
+		}
+
+		@Override
+		public boolean hasMore() {
+			return false;
+		}
+	}
+}
@@ -16,12 +16,6 @@ public class Part3_Tests {
 	 * to maximum performance, which makes a real difference on the big domains.
 	 */
 	private final int NTHREADS = 1; // Runtime.getRuntime().availableProcessors();
-	/**
-	 * Number of inputs each thread to process in one go. You may need to hand tune
-	 * this a little to maximum performance, which makes a real difference on the
-	 * big domains.
-	 */
-	private final int BATCHSIZE = 128;
 	/**
 	 * Enable/disable enforcement of a hard timeout. Disabling this can help with
 	 * debugging, but remember that the automated marking script will enforce a
@@ -30,8 +24,8 @@ public class Part3_Tests {
 	private final boolean HARD_TIMEOUT = true;
 
 	/**
-	 * Enable/disable the GUI. This can improve overall performance (especially for
-	 * multiple threads).
+	 * Enable/disable the GUI. Workers always run headless, with the display of one
+	 * mirrored at a fixed frame rate, so this costs little performance.
 	 */
 	private final boolean GUI_ENABLED = true;
 
@@ -41,7 +35,7 @@ public class Part3_Tests {
 	 */
 	@Test
 	public void test_01() throws Exception {
-		TestUtils.checkCoverage(95.0, "blocks_1.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(95.0, "blocks_1.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -50,7 +44,7 @@ public class Part3_Tests {
 	 */
 	@Test
 	public void test_02() throws Exception {
-		TestUtils.checkCoverage(95.0, "blocks_2.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(95.0, "blocks_2.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -59,7 +53,7 @@ public class Part3_Tests {
 	 */
 	@Test
 	public void test_03() throws Exception {
-		TestUtils.checkCoverage(95.0, "blocks_3.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(95.0, "blocks_3.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -68,7 +62,7 @@ public class Part3_Tests {
 	 */
 	@Test
 	public void test_04() throws Exception {
-		TestUtils.checkCoverage(95.0, "blocks_4.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(95.0, "blocks_4.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -77,7 +71,7 @@ public class Part3_Tests {
 	 */
 	@Test
 	public void test_05() throws Exception {
-		TestUtils.checkCoverage(95.0, "blocks_5.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(95.0, "blocks_5.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -86,7 +80,7 @@ public class Part3_Tests {
 	 */
 	@Test
 	public void test_06() throws Exception {
-		TestUtils.checkCoverage(95.0, "blocks_6.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(95.0, "blocks_6.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -95,6 +89,6 @@ public class Part3_Tests {
 	 */
 	@Test
 	public void test_07() throws Exception {
-		TestUtils.checkCoverage(95.0, "blocks_7.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(95.0, "blocks_7.hex", this.HARD_TIMEOUT, this.GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 }
@@ -4,6 +4,8 @@ import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import tinyboycov.core.MutationStrategy;
+
 /**
  * Tests for part 4 of the assignment.
  * @author David J. Pearce
@@ -16,12 +18,6 @@ public class Part4_Tests {
 	 * to maximum performance, which makes a real difference on the big domains.
 	 */
 	private final int NTHREADS = 1; // Runtime.getRuntime().availableProcessors();
-	/**
-	 * Number of inputs each thread to process in one go. You may need to hand
-	 * tune this a little to maximum performance, which makes a real difference on
-	 * the big domains.
-	 */
-	private final int BATCHSIZE = 128;
 	/**
 	 * Enable/disable enforcement of a hard timeout. Disabling this can help with
 	 * debugging, but remember that the automated marking script will enforce a
@@ -30,7 +26,8 @@ public class Part4_Tests {
 	private static boolean HARD_TIMEOUT = true;
 
 	/**
-	 * Enable/disable the GUI. This can improve overall performance (especially for multiple threads).
+	 * Enable/disable the GUI. Workers always run headless, with the display of one
+	 * mirrored at a fixed frame rate, so this costs little performance.
 	 */
 	private static boolean GUI_ENABLED = true;
 
@@ -40,7 +37,7 @@ public class Part4_Tests {
 	 */
 	@Test
 	public void test_01() throws Exception {
-		TestUtils.checkCoverage(85.0, "blocker_1.hex", HARD_TIMEOUT, GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(85.0, "blocker_1.hex", HARD_TIMEOUT, GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -49,7 +46,7 @@ public class Part4_Tests {
 	 */
 	@Test
 	public void test_02() throws Exception {
-		TestUtils.checkCoverage(85.0, "blocker_2.hex", HARD_TIMEOUT, GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(85.0, "blocker_2.hex", HARD_TIMEOUT, GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -59,7 +56,7 @@ public class Part4_Tests {
 	@Test
 	public void test_03() throws Exception {
 		// NOTE: some condition checks in numbers prevent some areas for being reachable at all.
-		TestUtils.checkCoverage(85.0, "numbers_1.hex", HARD_TIMEOUT, GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(85.0, "numbers_1.hex", HARD_TIMEOUT, GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -68,7 +65,8 @@ public class Part4_Tests {
 	 */
 	@Test
 	public void test_04() throws Exception {
-		TestUtils.checkCoverage(85.0, "snake.hex", HARD_TIMEOUT, GUI_ENABLED, this.NTHREADS, this.BATCHSIZE); //$NON-NLS-1$
+		// NOTE: snake needs a direction held for some time to reach most of its code.
+		TestUtils.checkCoverage(85.0, "snake.hex", MutationStrategy.BANDIT, HARD_TIMEOUT, GUI_ENABLED, this.NTHREADS); //$NON-NLS-1$
 	}
 
 	/**
@@ -78,6 +76,6 @@ public class Part4_Tests {
 	@Test
 	public void test_05() throws Exception {
 		// NOTE: tetris is pretty hard to get beyond 84%.
-		TestUtils.checkCoverage(85.0, "tetris.hex",HARD_TIMEOUT,GUI_ENABLED,this.NTHREADS,this.BATCHSIZE); //$NON-NLS-1$
+		TestUtils.checkCoverage(85.0, "tetris.hex",HARD_TIMEOUT,GUI_ENABLED,this.NTHREADS); //$NON-NLS-1$
 	}
 }
@@ -8,14 +8,15 @@ import java.io.IOException;
 
 import org.eclipse.jdt.annotation.Nullable;
 
-import javr.core.AVR;
-import javr.core.AvrDecoder;
 import javr.core.AvrInstruction;
 import javr.io.HexFile;
-import javr.memory.ByteMemory;
 import tinyboy.util.AutomatedTester;
-import tinyboy.util.CoverageAnalysis;
+import tinyboycov.core.CorpusFile;
+import tinyboycov.core.MutationStrategy;
 import tinyboycov.core.TinyBoyInputGenerator;
+import tinyboycov.util.CoverageTimeline;
+import tinyboycov.util.FirmwareAnalysis;
+import tinyboycov.util.FuzzTester;
 import tinyboycov.util.ProcessTimerMethod;
 
 /**
@@ -37,6 +38,22 @@ public class TestUtils {
 	 * Specifies where to find the firmware images.
 	 */
 	private static final String FIRMWARE_DIR;
+	/**
+	 * Specifies where to keep the persistent corpus of inputs for each firmware.
+	 */
+	private static final File CORPUS_DIR = new File("corpus"); //$NON-NLS-1$
+	/**
+	 * Specifies where to write the coverage timeline of each test.
+	 */
+	private static final File TIMELINE_DIR = new File("timelines"); //$NON-NLS-1$
+	/**
+	 * Flag to direct input generation towards uncovered branches.
+	 */
+	private static final boolean DIRECTED = Boolean.getBoolean("tinyboycov.directed"); //$NON-NLS-1$
+	/**
+	 * Size (in bytes) of the TinyBoy's code memory.
+	 */
+	private static final int CODE_SIZE = 8192;
 
 	static {
 		// Manage safe static initialiser
@@ -60,7 +77,7 @@ public class TestUtils {
 		// Generate firmware
 		HexFile firmware = assemble(instructions);
 		// Done
-		TestUtils.checkCoverage(name, firmware, target, false, false, 1, 1);
+		TestUtils.checkCoverage(name, firmware, target, false, false, 1);
 	}
 
 	/**
@@ -73,20 +90,34 @@ public class TestUtils {
 	 * @param timeout   Time limit
 	 * @param gui       Flag to show Graphical User Interface.
 	 * @param nThreads  Number of threads to use.
-	 * @param batchSize Batch size of jobs for each thread.
 	 * @throws Exception If something goes wrong.
 	 */
-	public static void checkCoverage(double target, String filename, boolean timeout, boolean gui, int nThreads, int batchSize) throws Exception {
+	public static void checkCoverage(double target, String filename, boolean timeout, boolean gui, int nThreads) throws Exception {
 		// Determine test name
 		String name = getMethodName(1) + ":" + filename; //$NON-NLS-1$
-		// Generate firmware
-		try(FileReader fr = new FileReader(FIRMWARE_DIR + filename)) {
-			HexFile.Reader reader = new HexFile.Reader(fr);
-			HexFile firmware = reader.readAll();
-			assert firmware != null;
-			// Done
-			TestUtils.checkCoverage(name, firmware, target, timeout, gui, nThreads, batchSize);
-		}
+		// Done
+		TestUtils.checkCoverage(name, load(filename), target, MutationStrategy.EXTEND, timeout, gui, nThreads);
+	}
+
+	/**
+	 * Perform automated coverage analysis of a given firmware file, using a given
+	 * strategy for mutating inputs. The firmware is first loaded from the
+	 * appropriate location and then uploaded into the TinyBoy.
+	 *
+	 * @param target    The target coverage (as a percentage).
+	 * @param filename  File name of firmware image
+	 * @param strategy  Strategy for mutating inputs.
+	 * @param timeout   Time limit
+	 * @param gui       Flag to show Graphical User Interface.
+	 * @param nThreads  Number of threads to use.
+	 * @throws Exception If something goes wrong.
+	 */
+	public static void checkCoverage(double target, String filename, MutationStrategy strategy, boolean timeout,
+			boolean gui, int nThreads) throws Exception {
+		// Determine test name
+		String name = getMethodName(1) + ":" + filename; //$NON-NLS-1$
+		// Done
+		TestUtils.checkCoverage(name, load(filename), target, strategy, timeout, gui, nThreads);
 	}
 
 	/**
@@ -98,27 +129,42 @@ public class TestUtils {
 	 * @param timeout   Time limit
 	 * @param gui       Flag to show Graphical User Interface.
 	 * @param nThreads  Number of threads to use.
-	 * @param batchSize Batch size of jobs for each thread.
 	 * @throws Exception If something goes wrong.
 	 */
-	public static void checkCoverage(String name, HexFile firmware, double target, boolean timeout, boolean gui, int nThreads, int batchSize) throws Exception {
+	public static void checkCoverage(String name, HexFile firmware, double target, boolean timeout, boolean gui, int nThreads) throws Exception {
+		checkCoverage(name, firmware, target, MutationStrategy.EXTEND, timeout, gui, nThreads);
+	}
+
+	/**
+	 * Perform automated coverage analysis of a given firmware, using a given
+	 * strategy for mutating inputs.
+	 *
+	 * @param name     Name used for printing out report
+	 * @param firmware The firmware image being used
+	 * @param target    The target coverage (as a percentage).
+	 * @param strategy  Strategy for mutating inputs.
+	 * @param timeout   Time limit
+	 * @param gui       Flag to show Graphical User Interface.
+	 * @param nThreads  Number of threads to use.
+	 * @throws Exception If something goes wrong.
+	 */
+	public static void checkCoverage(String name, HexFile firmware, double target, MutationStrategy strategy,
+			boolean timeout, boolean gui, int nThreads) throws Exception {
 		// Manage safe boxing
 		final Double _target = Double.valueOf(target);
 		final Boolean _gui = Boolean.valueOf(gui);
 		final Integer _nThreads = Integer.valueOf(nThreads);
-		final Integer _batchSize = Integer.valueOf(batchSize);
 		assert _target != null;
 		assert _gui != null;
 		assert _nThreads != null;
-		assert _batchSize != null;
 		// Done
 		if (timeout) {
 			String testClassName = TestUtils.class.getName();
 			assert testClassName != null;
 			try {
 				ProcessTimerMethod.Outcome r = ProcessTimerMethod.exec(TIMEOUT, testClassName,
-						"checkCoverageWithTimeout", name, firmware, _target, _gui, //$NON-NLS-1$
-						_nThreads, _batchSize);
+						"checkCoverageWithTimeout", name, firmware, _target, strategy, _gui, //$NON-NLS-1$
+						_nThreads);
 				//
 				System.out.println(new String(r.getStdout()));
 				System.out.println(new String(r.getStderr()));
@@ -136,7 +182,7 @@ public class TestUtils {
 				fail(e.getMessage());
 			}
 		} else {
-			checkCoverageWithTimeout(name, firmware, _target, _gui, _nThreads, _batchSize);
+			checkCoverageWithTimeout(name, firmware, _target, strategy, _gui, _nThreads);
 		}
 	}
 
@@ -148,21 +194,47 @@ public class TestUtils {
 	 * @param target    The target coverage (as a percentage).
 	 * @param gui       Flag to show Graphical User Interface.
 	 * @param nThreads  Number of threads to use.
-	 * @param batchSize Batch size of jobs for each thread.
 	 * @throws Exception If something goes wrong.
 	 */
-	public static void checkCoverageWithTimeout(String name, HexFile firmware, Double target, Boolean gui, Integer nThreads, Integer batchSize) throws Exception {
+	public static void checkCoverageWithTimeout(String name, HexFile firmware, Double target, Boolean gui, Integer nThreads) throws Exception {
+		checkCoverageWithTimeout(name, firmware, target, MutationStrategy.EXTEND, gui, nThreads);
+	}
+
+	/**
+	 * Perform automated coverage analysis of a given firmware, using a given
+	 * strategy for mutating inputs.
+	 *
+	 * @param name     Name used for printing out report
+	 * @param firmware The firmware image being used
+	 * @param target    The target coverage (as a percentage).
+	 * @param strategy  Strategy for mutating inputs.
+	 * @param gui       Flag to show Graphical User Interface.
+	 * @param nThreads  Number of threads to use.
+	 * @throws Exception If something goes wrong.
+	 */
+	public static void checkCoverageWithTimeout(String name, HexFile firmware, Double target, MutationStrategy strategy,
+			Boolean gui, Integer nThreads) throws Exception {
 		long time = System.currentTimeMillis();
-		// Construct the input generator
-		AutomatedTester.InputGenerator<?> generator = new TinyBoyInputGenerator();
-		// Construct the fuzz tester
-		AutomatedTester<?> tester = new AutomatedTester<>(firmware, generator, gui.booleanValue(), nThreads.intValue(), batchSize.intValue());
-		// Run the fuzz tester for 50 inputs.
-		CoverageAnalysis coverage = tester.run(target.doubleValue());
-		// Record time
-		time = System.currentTimeMillis() - time;
-		// Destroy GUI (if present)
-		tester.destroy();
+		FirmwareAnalysis.Coverage coverage;
+		// Open the persistent corpus for this firmware
+		try (CorpusFile store = CorpusFile.open(CORPUS_DIR, firmware)) {
+			// Construct the input generator
+			FirmwareAnalysis directed = DIRECTED ? FirmwareAnalysis.of(firmware) : null;
+			AutomatedTester.InputGenerator<?> generator = new TinyBoyInputGenerator(store, directed, strategy);
+			// Construct the fuzz tester
+			FuzzTester<?> tester = new FuzzTester<>(firmware, generator, gui.booleanValue(), nThreads.intValue());
+			try {
+				// Run the fuzz tester for 50 inputs.
+				coverage = tester.run(target.doubleValue());
+				// Record time
+				time = System.currentTimeMillis() - time;
+				// Write coverage timeline alongside the report
+				writeTimeline(name, tester.getTimeline());
+			} finally {
+				// Destroy GUI (if present)
+				tester.destroy();
+			}
+		}
 		// Check whether the target was reached.
 		if (coverage.getBranchCoverage() < target.doubleValue()) {
 			// Indicates a fail
@@ -179,6 +251,38 @@ public class TestUtils {
 
 	}
 
+	/**
+	 * Write the coverage timeline of a given test, such that runs can be compared
+	 * by how quickly coverage was obtained.
+	 *
+	 * @param name     Name of the test.
+	 * @param timeline The timeline to write (if any).
+	 * @throws IOException If the timeline cannot be written.
+	 */
+	private static void writeTimeline(String name, @Nullable CoverageTimeline timeline) throws IOException {
+		if (timeline != null) {
+			File file = new File(TIMELINE_DIR, name.replaceAll("[^A-Za-z0-9._-]", "_") + ".csv"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			timeline.writeTo(file);
+			System.out.println("TIMELINE: " + file); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Load a given firmware image from the appropriate location.
+	 *
+	 * @param filename File name of firmware image.
+	 * @return The firmware image.
+	 * @throws IOException If the firmware cannot be read.
+	 */
+	private static HexFile load(String filename) throws IOException {
+		try (FileReader fr = new FileReader(FIRMWARE_DIR + filename)) {
+			HexFile.Reader reader = new HexFile.Reader(fr);
+			HexFile firmware = reader.readAll();
+			assert firmware != null;
+			return firmware;
+		}
+	}
+
 	/**
 	 * This is an "interesting" method which determines the name of a method on the
 	 * call stack, as determined by a given index relative to the position of the
@@ -236,19 +340,18 @@ public class TestUtils {
 	 * @param firmware The firmware file to be disassembled.
 	 * @param coverage The computed coverage which is included in the output.
 	 */
-	public static void printDisassembly(HexFile firmware, CoverageAnalysis coverage) {
-		AvrDecoder decoder = new AvrDecoder();
-		AVR.Memory code = new ByteMemory(8192);
-		firmware.uploadTo(code);
-		int size = code.size() / 2;
+	public static void printDisassembly(HexFile firmware, FirmwareAnalysis.Coverage coverage) {
+		// NOTE: the analysis has already decoded every reachable instruction.
+		FirmwareAnalysis analysis = coverage.getAnalysis();
+		int size = analysis.size() / 2;
 		boolean ignoring = false;
 		int instructions = 0;
 		int coveredInstructions = 0;
 		int branches = 0;
 		int coveredBranches = 0;
 		for (int i = 0; i != size;) {
-			if (coverage.isReachableInstruction(i)) {
-				AvrInstruction insn = decoder.decode(code, i);
+			if (analysis.isReachableInstruction(i)) {
+				AvrInstruction insn = analysis.getInstruction(i);
 				System.out.print(String.format("%04X", Integer.valueOf(i))); //$NON-NLS-1$
 				instructions++;
 				if (coverage.wasCovered(i)) {
@@ -261,7 +364,7 @@ public class TestUtils {
 				if (coverage.isConditionalBranchCovered(i)) {
 					System.out.println("\t<<<<<<<<<<<<<<<<<<<< (" + branches++ + ")"); //$NON-NLS-1$ //$NON-NLS-2$
 					coveredBranches++;
-				} else if (coverage.isConditionalBranch(i)) {
+				} else if (analysis.isConditionalBranch(i)) {
 					System.out.println("\t<<<<<<<<<<<<<<<<<<<< UNCOVERED (" + branches++ + ")"); //$NON-NLS-1$ //$NON-NLS-2$
 				} else {
 					System.out.println();
@@ -277,7 +380,7 @@ public class TestUtils {
 			}
 		}
 		System.out.println(
-				"Instruction Coverage = " + coveredInstructions + " / " + instructions + " (" + code.size() + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				"Instruction Coverage = " + coveredInstructions + " / " + instructions + " (" + CODE_SIZE + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 		System.out.println("Branch Coverage = " + coveredBranches + " / " + branches + " (" + coverage.getBranchCoverage() + "%)"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
 	}
 
@@ -0,0 +1,113 @@
+package tinyboycov.util;
+
+/**
+ * A multi-armed bandit which chooses between a fixed number of options (arms)
+ * according to how rewarding each has been recently. This uses the upper
+ * confidence bound (UCB) rule, such that the arm with the highest mean reward
+ * is chosen unless another has been tried so rarely that its mean may yet turn
+ * out higher. Past rewards are discounted as new ones arrive, so the bandit
+ * follows whichever arm is rewarding now rather than whichever was at the start.
+ */
+public final class Bandit {
+	/**
+	 * Factor by which past pulls and rewards are discounted on each new reward.
+	 */
+	private static final double DECAY = 0.995;
+	/**
+	 * Weight given to trying arms rarely pulled, against exploiting the best.
+	 */
+	private static final double EXPLORATION = 0.5;
+	/**
+	 * Discounted number of times each arm has been pulled.
+	 */
+	private final double[] pulls;
+	/**
+	 * Discounted total reward obtained from each arm.
+	 */
+	private final double[] rewards;
+
+	/**
+	 * Construct a bandit with a given number of arms, none yet pulled.
+	 *
+	 * @param arms Number of arms.
+	 */
+	public Bandit(int arms) {
+		this.pulls = new double[arms];
+		this.rewards = new double[arms];
+	}
+
+	/**
+	 * Get the number of arms.
+	 *
+	 * @return Number of arms.
+	 */
+	public int size() {
+		return this.pulls.length;
+	}
+
+	/**
+	 * Choose which arm to pull next. Any arm not yet pulled is chosen first and,
+	 * otherwise, the arm with the highest upper confidence bound. The pull is
+	 * counted immediately, with its reward pending, since several pulls may be
+	 * outstanding before any reward arrives. Otherwise, an arm not yet pulled
+	 * would be chosen repeatedly until its first reward arrived.
+	 *
+	 * @return Index of the arm chosen.
+	 */
+	public int select() {
+		int arm = choose();
+		pull(arm);
+		return arm;
+	}
+
+	/**
+	 * Count a further pull of a given arm, whose reward is pending. For example,
+	 * when a single selection yields several trials which are each rewarded.
+	 *
+	 * @param arm Index of the arm pulled.
+	 */
+	public void pull(int arm) {
+		this.pulls[arm] += 1;
+	}
+
+	/**
+	 * Determine which arm to pull next, without counting the pull.
+	 *
+	 * @return Index of the arm chosen.
+	 */
+	private int choose() {
+		double total = 0;
+		for (int i = 0; i != this.pulls.length; ++i) {
+			if (this.pulls[i] == 0) {
+				return i;
+			}
+			total += this.pulls[i];
+		}
+		int best = 0;
+		double bestBound = Double.NEGATIVE_INFINITY;
+		double log = Math.log(Math.max(1, total));
+		for (int i = 0; i != this.pulls.length; ++i) {
+			double bound = this.rewards[i] / this.pulls[i] + EXPLORATION * Math.sqrt(2 * log / this.pulls[i]);
+			if (bound > bestBound) {
+				best = i;
+				bestBound = bound;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Record the reward obtained from a pull of a given arm, which was counted
+	 * when it was made.
+	 *
+	 * @param arm    Index of the arm pulled.
+	 * @param reward The reward obtained (between 0 and 1).
+	 */
+	public void reward(int arm, double reward) {
+		for (int i = 0; i != this.pulls.length; ++i) {
+			this.pulls[i] *= DECAY;
+			this.rewards[i] *= DECAY;
+		}
+		this.rewards[arm] += reward;
+	}
+}
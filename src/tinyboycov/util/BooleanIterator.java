@@ -0,0 +1,32 @@
+package tinyboycov.util;
+
+import java.util.Iterator;
+
+/**
+ * An iterator over booleans which provides a primitive fast path, thus
+ * avoiding the cost of boxing on every read.
+ */
+public interface BooleanIterator extends Iterator<Boolean> {
+	/**
+	 * Get the next boolean in the sequence.
+	 *
+	 * @return The next boolean.
+	 */
+	public boolean nextBoolean();
+
+	/**
+	 * Skip over a given number of booleans in the sequence.
+	 *
+	 * @param n Number of booleans to skip.
+	 */
+	public default void skip(int n) {
+		for (int i = 0; i != n; ++i) {
+			nextBoolean();
+		}
+	}
+
+	@Override
+	public default Boolean next() {
+		return Boolean.valueOf(nextBoolean());
+	}
+}
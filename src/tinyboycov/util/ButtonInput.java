@@ -0,0 +1,22 @@
+package tinyboycov.util;
+
+/**
+ * An input sequence which drives the buttons of the control pad. This is made
+ * up of a series of steps, where each step supplies one input for each button
+ * in turn (i.e. each read of the pin register consumes one step). Such
+ * sequences can be searched ahead, which allows loops polling a button to be
+ * fast-forwarded.
+ */
+public interface ButtonInput extends BooleanIterator {
+	/**
+	 * Skip over whole steps until reaching one where a given button is (or is
+	 * not) pressed, or the last step of the sequence. This has no effect unless
+	 * the sequence is positioned at the start of a step.
+	 *
+	 * @param button  The button (ordinal) in question.
+	 * @param pressed Whether to stop at a step where the button is pressed, or
+	 *                one where it is not.
+	 * @return The number of steps skipped.
+	 */
+	public int seek(int button, boolean pressed);
+}
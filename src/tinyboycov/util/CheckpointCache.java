@@ -0,0 +1,63 @@
+package tinyboycov.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A bounded cache of machine checkpoints, keyed by the input prefix which led
+ * to them. When the cache is full, the least recently used checkpoint is
+ * discarded. This is safe to share between worker threads.
+ */
+public class CheckpointCache {
+	/**
+	 * The checkpoints themselves, maintained in access order.
+	 */
+	private final LinkedHashMap<String, FuzzEmulator.Snapshot> checkpoints;
+
+	/**
+	 * Construct a new cache holding at most a given number of checkpoints.
+	 *
+	 * @param capacity Maximum number of checkpoints to retain.
+	 */
+	public CheckpointCache(int capacity) {
+		this.checkpoints = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FuzzEmulator.Snapshot> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Lookup the checkpoint for a given input prefix.
+	 *
+	 * @param prefix The input prefix.
+	 * @return The checkpoint, or <code>null</code> if none cached.
+	 */
+	public synchronized FuzzEmulator.@Nullable Snapshot get(String prefix) {
+		return this.checkpoints.get(prefix);
+	}
+
+	/**
+	 * Cache the checkpoint for a given input prefix.
+	 *
+	 * @param prefix   The input prefix.
+	 * @param snapshot The machine state after that prefix.
+	 */
+	public synchronized void put(String prefix, FuzzEmulator.Snapshot snapshot) {
+		this.checkpoints.put(prefix, snapshot);
+	}
+
+	/**
+	 * Get the number of checkpoints currently cached.
+	 *
+	 * @return Number of checkpoints.
+	 */
+	public synchronized int size() {
+		return this.checkpoints.size();
+	}
+}
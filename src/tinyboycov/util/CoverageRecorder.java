@@ -0,0 +1,100 @@
+package tinyboycov.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Records the set of instructions executed by an emulator. This is intended to
+ * be owned by a single worker and reused across runs. Instructions are recorded
+ * by (word) address in a primitive bitmap which is written directly on each
+ * instruction fetch, and cleared in place between runs. Hence, no allocation
+ * occurs during a run.
+ */
+public final class CoverageRecorder {
+	/**
+	 * Bitmap of executed instructions, indexed by program counter.
+	 */
+	private final long[] words;
+
+	/**
+	 * Construct a recorder for a code memory of a given size.
+	 *
+	 * @param size The size (in bytes) of code memory.
+	 */
+	public CoverageRecorder(int size) {
+		// NOTE: every instruction occupies at least one word.
+		this.words = new long[((size / 2) + 63) >>> 6];
+	}
+
+	/**
+	 * Record that the instruction at a given program counter was executed (or
+	 * skipped over by a skip instruction, which reads it to determine its width).
+	 *
+	 * @param pc Program counter (i.e. word address).
+	 */
+	public void hit(int pc) {
+		this.words[pc >>> 6] |= 1L << pc;
+	}
+
+	/**
+	 * Clear all recorded instructions.
+	 */
+	public void clear() {
+		Arrays.fill(this.words, 0L);
+	}
+
+	/**
+	 * Take a copy of the recorded instructions, suitable for passing to
+	 * <code>restore()</code>.
+	 *
+	 * @return Copy of the bitmap.
+	 */
+	public long[] save() {
+		return this.words.clone();
+	}
+
+	/**
+	 * Overwrite the recorded instructions with those previously saved.
+	 *
+	 * @param saved Bitmap returned from <code>save()</code>.
+	 */
+	public void restore(long[] saved) {
+		System.arraycopy(saved, 0, this.words, 0, this.words.length);
+	}
+
+	/**
+	 * Convert the recorded instructions into the form used by
+	 * <code>CoverageAnalysis</code>. That is, a bitset indexed by byte address in
+	 * code memory where both bytes of an executed instruction are set.
+	 *
+	 * @return Set of code bytes executed.
+	 */
+	public BitSet toBitSet() {
+		long[] bytes = new long[this.words.length * 2];
+		for (int i = 0; i != this.words.length; ++i) {
+			long w = this.words[i];
+			if (w != 0) {
+				bytes[i * 2] = spread(w);
+				bytes[(i * 2) + 1] = spread(w >>> 32);
+			}
+		}
+		return BitSet.valueOf(bytes);
+	}
+
+	/**
+	 * Spread the lower 32 bits of a word so that bit <code>i</code> is copied to
+	 * both bits <code>2i</code> and <code>2i+1</code> of the result.
+	 *
+	 * @param w Word to spread.
+	 * @return The spread word.
+	 */
+	private static long spread(long w) {
+		long x = w & 0xFFFFFFFFL;
+		x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+		x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+		x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+		x = (x | (x << 2)) & 0x3333333333333333L;
+		x = (x | (x << 1)) & 0x5555555555555555L;
+		return x | (x << 1);
+	}
+}
@@ -0,0 +1,144 @@
+package tinyboycov.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Records how coverage grows over the course of a fuzzing run. A point is
+ * recorded each time a new branch is covered, giving the elapsed time, the
+ * number of inputs executed and the number of branches covered at that moment.
+ * This allows runs (and, hence, strategies) to be compared by the time taken
+ * to reach a given level of coverage, and makes plain when a run has stopped
+ * making progress.
+ */
+public final class CoverageTimeline {
+	/**
+	 * Number of values held for each point.
+	 */
+	private static final int WIDTH = 3;
+	/**
+	 * Time at which the run started.
+	 */
+	private final long start = System.currentTimeMillis();
+	/**
+	 * Total number of branches which can be covered.
+	 */
+	private final int branches;
+	/**
+	 * Points recorded so far, where each occupies <code>WIDTH</code> consecutive
+	 * entries (i.e. elapsed time, executions and branches covered).
+	 */
+	private long[] points = new long[WIDTH * 16];
+	/**
+	 * Number of points recorded so far.
+	 */
+	private int size;
+
+	/**
+	 * Construct an empty timeline.
+	 *
+	 * @param branches Total number of branches which can be covered.
+	 */
+	public CoverageTimeline(int branches) {
+		this.branches = branches;
+	}
+
+	/**
+	 * Record a point on the timeline at the current time.
+	 *
+	 * @param executions Number of inputs executed so far.
+	 * @param covered    Number of branches covered so far.
+	 */
+	public synchronized void add(long executions, int covered) {
+		int i = this.size * WIDTH;
+		if (i == this.points.length) {
+			this.points = Arrays.copyOf(this.points, this.points.length * 2);
+		}
+		this.points[i] = System.currentTimeMillis() - this.start;
+		this.points[i + 1] = executions;
+		this.points[i + 2] = covered;
+		this.size++;
+	}
+
+	/**
+	 * Get the number of points recorded.
+	 *
+	 * @return Number of points.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Get the elapsed time of a given point.
+	 *
+	 * @param i Index of the point.
+	 * @return Time (in milliseconds) since the run started.
+	 */
+	public synchronized long getElapsed(int i) {
+		return this.points[(i * WIDTH)];
+	}
+
+	/**
+	 * Get the number of inputs executed at a given point.
+	 *
+	 * @param i Index of the point.
+	 * @return Number of executions.
+	 */
+	public synchronized long getExecutions(int i) {
+		return this.points[(i * WIDTH) + 1];
+	}
+
+	/**
+	 * Get the number of branches covered at a given point.
+	 *
+	 * @param i Index of the point.
+	 * @return Number of branches covered.
+	 */
+	public synchronized int getCovered(int i) {
+		return (int) this.points[(i * WIDTH) + 2];
+	}
+
+	/**
+	 * Determine the time taken to first reach a given branch coverage.
+	 *
+	 * @param percentage The coverage in question (as a percentage).
+	 * @return Time (in milliseconds) since the run started, or <code>-1</code> if
+	 *         never reached.
+	 */
+	public synchronized long timeToCoverage(double percentage) {
+		for (int i = 0; i != this.size; ++i) {
+			if ((100.0 * getCovered(i)) / this.branches >= percentage) {
+				return getElapsed(i);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Write this timeline to a given file as CSV, replacing its existing
+	 * contents. Any missing parent directories are created.
+	 *
+	 * @param file The file to write.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public synchronized void writeTo(File file) throws IOException {
+		File dir = file.getParentFile();
+		if (dir != null) {
+			dir.mkdirs();
+		}
+		try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+			out.println("time_ms,executions,branches_covered,branch_coverage"); //$NON-NLS-1$
+			for (int i = 0; i != this.size; ++i) {
+				double coverage = Math.round((1000.0 * getCovered(i)) / this.branches) / 10.0;
+				out.println(getElapsed(i) + "," + getExecutions(i) + "," + getCovered(i) + "," + coverage); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+			if (out.checkError()) {
+				throw new IOException("error writing " + file); //$NON-NLS-1$
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package tinyboycov.util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import tinyboy.core.ControlPad;
+import tinyboy.core.TinyBoyEmulator;
+import tinyboy.views.TinyBoyPeripheral;
+
+/**
+ * Shows the display of a fuzzing worker's emulator in a window, without that
+ * emulator having any graphical view of its own. Instead, the display is
+ * sampled at a fixed frame rate from a separate thread, and the window is
+ * repainted from the sample. Thus, the worker never waits on the GUI, and
+ * repainting costs nothing however many instructions are executed. The window
+ * title reports the progress of the run.
+ */
+public final class DisplayMirror {
+	/**
+	 * Default number of times the window is refreshed per second.
+	 */
+	public static final int FRAME_RATE = 20;
+	/**
+	 * The display being mirrored.
+	 */
+	private final DisplaySink display;
+	/**
+	 * The metrics of the run, from which progress is reported.
+	 */
+	private final Metrics metrics;
+	/**
+	 * Stand-in emulator from which the window paints.
+	 */
+	private final Screen screen;
+	/**
+	 * The window showing the display.
+	 */
+	private final TinyBoyPeripheral view;
+	/**
+	 * Thread which samples the display.
+	 */
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * Construct a new mirror of a given emulator's display, and show it. This
+	 * enables pixel storage on the emulator, which must not be clocked
+	 * concurrently with this constructor.
+	 *
+	 * @param tinyBoy   The emulator whose display is mirrored.
+	 * @param metrics   The metrics of the run.
+	 * @param frameRate Number of times the window is refreshed per second.
+	 */
+	public DisplayMirror(FuzzEmulator tinyBoy, Metrics metrics, int frameRate) {
+		this.display = tinyBoy.getDisplay();
+		this.display.setStoring(true);
+		this.metrics = metrics;
+		this.screen = new Screen(tinyBoy.getDisplayWidth());
+		this.view = new TinyBoyPeripheral(this.screen);
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "mirror"); //$NON-NLS-1$
+			t.setDaemon(true);
+			return t;
+		});
+		long period = 1_000_000 / frameRate;
+		this.timer.scheduleAtFixedRate(this::refresh, period, period, TimeUnit.MICROSECONDS);
+	}
+
+	/**
+	 * Stop sampling the display, and close the window.
+	 */
+	public void destroy() {
+		this.timer.shutdownNow();
+		this.view.setVisible(false);
+		this.view.dispose();
+	}
+
+	/**
+	 * Sample the display and repaint the window. Observe that Swing permits
+	 * <code>repaint()</code> and <code>setTitle()</code> to be called from any
+	 * thread.
+	 */
+	private void refresh() {
+		byte[] pixels = this.display.sample();
+		if (pixels != null) {
+			this.screen.pixels = pixels;
+		}
+		this.view.setTitle("TinyBoy: " + this.metrics.getInputs() + " inputs, " //$NON-NLS-1$ //$NON-NLS-2$
+				+ Math.round(this.metrics.getBranchCoverage()) + "% branches"); //$NON-NLS-1$
+		this.view.repaint();
+	}
+
+	/**
+	 * An emulator which is never run, but simply reports the pixels of the last
+	 * frame sampled. This is needed only because the view paints from an
+	 * emulator.
+	 */
+	private static final class Screen extends TinyBoyEmulator {
+		/**
+		 * Width of the display (in pixels).
+		 */
+		private final int width;
+		/**
+		 * Pixels of the last frame sampled, or <code>null</code> if none yet.
+		 */
+		volatile byte @Nullable [] pixels;
+
+		/**
+		 * Construct a blank screen.
+		 *
+		 * @param width Width of the display (in pixels).
+		 */
+		Screen(int width) {
+			this.width = width;
+		}
+
+		@Override
+		public boolean isPixelSet(int x, int y) {
+			byte[] p = this.pixels;
+			return p != null && DisplaySink.isSet(p, this.width, x, y);
+		}
+
+		@Override
+		public boolean getButtonState(ControlPad.Button button) {
+			return false;
+		}
+
+		@Override
+		public void clockPeripherals() {
+			// NOTE: there is nothing to clock, since the screen is never run.
+		}
+	}
+}
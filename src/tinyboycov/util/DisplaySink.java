@@ -0,0 +1,257 @@
+package tinyboycov.util;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import javr.core.AvrPeripheral;
+import javr.core.Wire;
+
+/**
+ * A headless replacement for the TinyBoy's dot matrix display. This accepts
+ * exactly the same serial protocol (i.e. a bit is shifted in from
+ * <code>MOSI</code> on each rising edge of <code>SCK</code>, least significant
+ * bit first, with a frame being complete once every pixel has been written).
+ * However, bits are accumulated into a single shift register and stored a
+ * whole byte at a time, rather than being written individually into a buffer.
+ * Furthermore, pixel storage can be disabled altogether when nothing will look
+ * at the display, in which case the sink simply tracks its position within the
+ * current frame. Finally, the last complete frame can be sampled from another
+ * thread without locking, which allows the display to be shown without the
+ * emulator ever touching the GUI.
+ */
+public final class DisplaySink implements AvrPeripheral {
+	/**
+	 * The serial clock wire.
+	 */
+	private final Wire sck;
+	/**
+	 * The serial data wire.
+	 */
+	private final Wire mosi;
+	/**
+	 * Width of the display (in pixels).
+	 */
+	private final int width;
+	/**
+	 * Pixels of the last complete frame received.
+	 */
+	private final byte[] pixels;
+	/**
+	 * Bytes of the frame currently being received.
+	 */
+	private final byte[] frame;
+	/**
+	 * Bits received for the current byte, where the most recent occupies bit 7.
+	 */
+	private int shift;
+	/**
+	 * Bit position within the current frame.
+	 */
+	private int position;
+	/**
+	 * Indicates whether received frames are stored.
+	 */
+	private boolean storing;
+	/**
+	 * Copy of a complete frame made for another thread, or <code>null</code> if
+	 * none yet.
+	 */
+	private volatile byte @Nullable [] sample;
+	/**
+	 * Set when another thread wants a fresh copy of the next complete frame.
+	 */
+	private volatile boolean requested;
+
+	/**
+	 * Construct a new display sink.
+	 *
+	 * @param width   Width of the display (in pixels).
+	 * @param height  Height of the display (in pixels).
+	 * @param sck     The serial clock wire.
+	 * @param mosi    The serial data wire.
+	 * @param storing Flag to enable pixel storage.
+	 */
+	public DisplaySink(int width, int height, Wire sck, Wire mosi, boolean storing) {
+		this.sck = sck;
+		this.mosi = mosi;
+		this.width = width;
+		this.pixels = new byte[(width / 8) * height];
+		this.frame = new byte[this.pixels.length];
+		this.storing = storing;
+	}
+
+	/**
+	 * Check whether received frames are being stored.
+	 *
+	 * @return True if pixels are stored.
+	 */
+	public boolean isStoring() {
+		return this.storing;
+	}
+
+	/**
+	 * Enable or disable pixel storage. When disabled, the pixels last stored
+	 * remain as they were.
+	 *
+	 * @param storing Flag to enable pixel storage.
+	 */
+	public void setStoring(boolean storing) {
+		this.storing = storing;
+	}
+
+	/**
+	 * Check whether a given pixel is set in the last complete frame stored.
+	 *
+	 * @param x Horizontal position.
+	 * @param y Vertical position.
+	 * @return True if the pixel is set.
+	 */
+	public boolean isSet(int x, int y) {
+		return isSet(this.pixels, this.width, x, y);
+	}
+
+	/**
+	 * Sample the display from another thread. This returns a copy of a recent
+	 * complete frame, and requests a fresh copy of the next one. Since a copy is
+	 * only made when requested, and only once per frame, the emulator's thread is
+	 * barely affected. Frames are only available whilst storing.
+	 *
+	 * @return Pixels of a recent frame, or <code>null</code> if none yet.
+	 */
+	public byte @Nullable [] sample() {
+		this.requested = true;
+		return this.sample;
+	}
+
+	/**
+	 * Check whether a given pixel is set in a frame.
+	 *
+	 * @param pixels Pixels of the frame.
+	 * @param width  Width of the display (in pixels).
+	 * @param x      Horizontal position.
+	 * @param y      Vertical position.
+	 * @return True if the pixel is set.
+	 */
+	static boolean isSet(byte[] pixels, int width, int x, int y) {
+		int index = (y * (width / 8)) + (x / 8);
+		return (pixels[index] & (1 << (x % 8))) != 0;
+	}
+
+	@Override
+	public Wire[] getWires() {
+		return new Wire[] { this.sck, this.mosi, Wire.LOW, Wire.LOW };
+	}
+
+	@Override
+	public void clock() {
+		this.mosi.clock();
+		if (this.sck.isRising()) {
+			this.shift = (this.shift >>> 1) | (this.mosi.read() ? 0x80 : 0);
+			int p = ++this.position;
+			if ((p & 7) == 0) {
+				received(p >>> 3);
+			}
+		}
+		this.sck.clock();
+	}
+
+	@Override
+	public void reset() {
+		this.mosi.reset();
+		this.sck.reset();
+		this.shift = 0;
+		this.position = 0;
+		Arrays.fill(this.frame, (byte) 0);
+		Arrays.fill(this.pixels, (byte) 0);
+	}
+
+	/**
+	 * Take a copy of the sink's state, suitable for passing to
+	 * <code>restore()</code>. The pixels and partial frame are only included when
+	 * storing.
+	 *
+	 * @return Copy of the state.
+	 */
+	public byte[] save() {
+		int n = this.storing ? this.pixels.length : 0;
+		byte[] state = new byte[8 + (2 * n)];
+		writeInt(state, 0, this.shift);
+		writeInt(state, 4, this.position);
+		System.arraycopy(this.pixels, 0, state, 8, n);
+		System.arraycopy(this.frame, 0, state, 8 + n, n);
+		return state;
+	}
+
+	/**
+	 * Overwrite the sink's state with that previously saved.
+	 *
+	 * @param state State returned from <code>save()</code>.
+	 */
+	public void restore(byte[] state) {
+		this.shift = readInt(state, 0);
+		this.position = readInt(state, 4);
+		int n = (state.length - 8) / 2;
+		if (n != 0) {
+			System.arraycopy(state, 8, this.pixels, 0, n);
+			System.arraycopy(state, 8 + n, this.frame, 0, n);
+		}
+	}
+
+	/**
+	 * Check whether a state previously saved was saved whilst storing.
+	 *
+	 * @param state State returned from <code>save()</code>.
+	 * @return True if it includes the pixels.
+	 */
+	public static boolean isStored(byte[] state) {
+		return state.length > 8;
+	}
+
+	/**
+	 * A complete byte has been received.
+	 *
+	 * @param count Number of bytes received in the current frame.
+	 */
+	private void received(int count) {
+		if (this.storing) {
+			this.frame[count - 1] = (byte) this.shift;
+		}
+		if (count == this.frame.length) {
+			if (this.storing) {
+				System.arraycopy(this.frame, 0, this.pixels, 0, this.pixels.length);
+				if (this.requested) {
+					this.requested = false;
+					this.sample = this.pixels.clone();
+				}
+			}
+			this.position = 0;
+		}
+	}
+
+	/**
+	 * Write a 32-bit integer into a byte array (in big endian order).
+	 *
+	 * @param bytes  The array to write to.
+	 * @param offset Position to write at.
+	 * @param value  The value to write.
+	 */
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * Read a 32-bit integer from a byte array (in big endian order).
+	 *
+	 * @param bytes  The array to read from.
+	 * @param offset Position to read from.
+	 * @return The value read.
+	 */
+	private static int readInt(byte[] bytes, int offset) {
+		return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8)
+				| (bytes[offset + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,80 @@
+package tinyboycov.util;
+
+/**
+ * The edge coverage obtained by a single input. This consists of those entries
+ * in the edge map which were hit, along with the hit count bucket for each.
+ * Every bucket is represented by a distinct bit, making it easy for clients to
+ * accumulate the buckets seen for each entry in a byte map of size
+ * <code>EdgeMap.MAP_SIZE</code>.
+ */
+public final class EdgeCoverage {
+	/**
+	 * Edge coverage where no edges were hit.
+	 */
+	public static final EdgeCoverage EMPTY = new EdgeCoverage(new int[0]);
+	/**
+	 * Entries hit, sorted by index. Each is encoded with the index in the upper
+	 * bits, and the bucket in the lower eight bits.
+	 */
+	private final int[] entries;
+
+	/**
+	 * Construct edge coverage from a given set of entries.
+	 *
+	 * @param entries Encoded entries, sorted by index.
+	 */
+	EdgeCoverage(int[] entries) {
+		this.entries = entries;
+	}
+
+	/**
+	 * Get the number of entries hit.
+	 *
+	 * @return Number of entries.
+	 */
+	public int size() {
+		return this.entries.length;
+	}
+
+	/**
+	 * Get the index in the edge map of the ith entry hit.
+	 *
+	 * @param i The entry in question.
+	 * @return Index in edge map.
+	 */
+	public int getIndex(int i) {
+		return this.entries[i] >>> 8;
+	}
+
+	/**
+	 * Get the hit count bucket of the ith entry hit.
+	 *
+	 * @param i The entry in question.
+	 * @return Bucket (a single bit).
+	 */
+	public byte getBucket(int i) {
+		return (byte) this.entries[i];
+	}
+
+	/**
+	 * Check whether every entry (and its bucket) in this coverage is also in
+	 * another.
+	 *
+	 * @param other The coverage which may be subsuming.
+	 * @return True if this is subsumed by other, false otherwise.
+	 */
+	public boolean subsumedBy(EdgeCoverage other) {
+		int[] lhs = this.entries;
+		int[] rhs = other.entries;
+		int j = 0;
+		for (int i = 0; i != lhs.length; ++i) {
+			while (j < rhs.length && rhs[j] < lhs[i]) {
+				j = j + 1;
+			}
+			if (j == rhs.length || rhs[j] != lhs[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
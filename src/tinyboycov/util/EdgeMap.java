@@ -0,0 +1,137 @@
+package tinyboycov.util;
+
+import java.util.Arrays;
+
+/**
+ * Records the edges (i.e. pairs of consecutive instructions) executed by an
+ * emulator, along with how many times each was taken. Following AFL, each edge
+ * is hashed into a fixed-size map of hit counters. Unlike instruction coverage,
+ * this distinguishes (for example) a skip instruction which skipped from one
+ * which fell through, and a loop executed once from one executed many times.
+ * This is intended to be owned by a single worker and reused across runs.
+ */
+public final class EdgeMap {
+	/**
+	 * Number of entries in the map. This must be a power of two.
+	 */
+	public static final int MAP_SIZE = 1 << 16;
+	/**
+	 * Maps each hit count onto its bucket. Counts are grouped logarithmically
+	 * (i.e. 1, 2, 3, 4-7, 8-15, 16-31, 32-127, 128+) and each bucket is
+	 * represented by a distinct bit.
+	 */
+	private static final byte[] BUCKETS = new byte[256];
+
+	static {
+		for (int i = 1; i != BUCKETS.length; ++i) {
+			int b;
+			if (i <= 3) {
+				b = i - 1;
+			} else if (i < 32) {
+				b = 31 - Integer.numberOfLeadingZeros(i) + 1;
+			} else if (i < 128) {
+				b = 6;
+			} else {
+				b = 7;
+			}
+			BUCKETS[i] = (byte) (1 << b);
+		}
+	}
+
+	/**
+	 * Hit counter for each entry. Counters saturate, rather than wrap.
+	 */
+	private final byte[] hits = new byte[MAP_SIZE];
+	/**
+	 * Entries with a non-zero hit count, in the order they were first hit. This
+	 * allows the map to be cleared and saved without scanning all of it.
+	 */
+	private final int[] touched = new int[MAP_SIZE];
+	/**
+	 * Number of valid entries in <code>touched</code>.
+	 */
+	private int count;
+	/**
+	 * Hashed location of the previous instruction executed.
+	 */
+	private int previous;
+
+	/**
+	 * Record that the instruction at a given program counter was executed,
+	 * following on from the previously executed instruction.
+	 *
+	 * @param pc Program counter (i.e. word address).
+	 */
+	public void hit(int pc) {
+		// Scramble program counters, since they are small and densely packed.
+		int location = (pc * 0x9E3779B1) >>> 16;
+		int index = (location ^ this.previous) & (MAP_SIZE - 1);
+		// Shift ensures A->B and B->A are distinct (as are A->A and B->B).
+		this.previous = location >>> 1;
+		byte h = this.hits[index];
+		if (h == 0) {
+			this.touched[this.count++] = index;
+		}
+		if (h != -1) {
+			this.hits[index] = (byte) (h + 1);
+		}
+	}
+
+	/**
+	 * Clear all recorded edges.
+	 */
+	public void clear() {
+		for (int i = 0; i != this.count; ++i) {
+			this.hits[this.touched[i]] = 0;
+		}
+		this.count = 0;
+		this.previous = 0;
+	}
+
+	/**
+	 * Take a copy of the recorded edges, suitable for passing to
+	 * <code>restore()</code>. Only entries which have been hit are included,
+	 * hence this is typically much smaller than the map itself.
+	 *
+	 * @return Compact copy of the map.
+	 */
+	public int[] save() {
+		int[] saved = new int[this.count + 1];
+		saved[0] = this.previous;
+		for (int i = 0; i != this.count; ++i) {
+			int index = this.touched[i];
+			saved[i + 1] = (index << 8) | (this.hits[index] & 0xFF);
+		}
+		return saved;
+	}
+
+	/**
+	 * Overwrite the recorded edges with those previously saved.
+	 *
+	 * @param saved Compact copy returned from <code>save()</code>.
+	 */
+	public void restore(int[] saved) {
+		clear();
+		this.previous = saved[0];
+		for (int i = 1; i < saved.length; ++i) {
+			int index = saved[i] >>> 8;
+			this.hits[index] = (byte) saved[i];
+			this.touched[this.count++] = index;
+		}
+	}
+
+	/**
+	 * Classify the recorded edges according to their hit count buckets.
+	 *
+	 * @return The edge coverage obtained.
+	 */
+	public EdgeCoverage toCoverage() {
+		int[] entries = new int[this.count];
+		for (int i = 0; i != this.count; ++i) {
+			int index = this.touched[i];
+			entries[i] = (index << 8) | (BUCKETS[this.hits[index] & 0xFF] & 0xFF);
+		}
+		Arrays.sort(entries);
+		return new EdgeCoverage(entries);
+	}
+}
@@ -0,0 +1,528 @@
+package tinyboycov.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import javr.core.AvrDecoder;
+import javr.core.AvrInstruction;
+import javr.io.HexFile;
+import javr.memory.ElasticByteMemory;
+import tinyboy.util.CoverageAnalysis;
+import tinyboycov.core.CorpusFile;
+
+/**
+ * A static analysis of a given firmware, which identifies the reachable
+ * instructions and the conditional branches amongst them. This agrees exactly
+ * with <code>CoverageAnalysis</code>, but is computed only once per firmware
+ * (and cached by hash) and then shared between everything which needs it.
+ * Furthermore, the information is held in flat arrays so that coverage can be
+ * tracked incrementally (see <code>Coverage</code>), rather than recomputed
+ * from scratch every time it is requested.
+ */
+public final class FirmwareAnalysis {
+	/**
+	 * Analyses computed so far, keyed by firmware hash.
+	 */
+	private static final ConcurrentHashMap<Long, FirmwareAnalysis> CACHE = new ConcurrentHashMap<>();
+	/**
+	 * Size (in bytes) of the flattened firmware.
+	 */
+	private final int size;
+	/**
+	 * Decoded instruction at each reachable (word) address, or <code>null</code>
+	 * for unreachable addresses.
+	 */
+	private final @Nullable AvrInstruction[] instructions;
+	/**
+	 * Bitmap of reachable instructions, indexed by (word) address.
+	 */
+	private final long[] reachable;
+	/**
+	 * Number of reachable instructions.
+	 */
+	private final int instructionCount;
+	/**
+	 * Index of each conditional branch in the branch table, or <code>-1</code>
+	 * for addresses which are not conditional branches.
+	 */
+	private final int[] branchIndex;
+	/**
+	 * Address of each conditional branch.
+	 */
+	private final int[] branches;
+	/**
+	 * Number of distinct successors of each conditional branch which must be
+	 * covered for that branch to be covered.
+	 */
+	private final byte[] successorCount;
+	/**
+	 * For each (word) address, the start of its entries in
+	 * <code>predecessors</code>. Hence, the conditional branches for which
+	 * address <code>pc</code> is a successor are found between
+	 * <code>predecessorStart[pc]</code> and <code>predecessorStart[pc+1]</code>.
+	 */
+	private final int[] predecessorStart;
+	/**
+	 * Branch table indices of the conditional branches for which each address is
+	 * a successor.
+	 */
+	private final int[] predecessors;
+	/**
+	 * For each (word) address, the start of its entries in
+	 * <code>flowPredecessors</code>. This mirrors <code>predecessorStart</code>,
+	 * but for the control-flow graph as a whole.
+	 */
+	private final int[] flowStart;
+	/**
+	 * Addresses of the reachable instructions which can flow directly to each
+	 * address (i.e. the reverse of the static control-flow graph).
+	 */
+	private final int[] flowPredecessors;
+
+	/**
+	 * Construct the analysis for a given firmware.
+	 *
+	 * @param firmware The firmware to analyse.
+	 */
+	private FirmwareAnalysis(HexFile firmware) {
+		// Reachability is determined by the standard analysis, so the two cannot
+		// disagree.
+		CoverageAnalysis analysis = new CoverageAnalysis(firmware);
+		ElasticByteMemory flash = new ElasticByteMemory();
+		firmware.uploadTo(flash);
+		this.size = flash.size();
+		int words = this.size / 2;
+		AvrDecoder decoder = new AvrDecoder();
+		this.instructions = new AvrInstruction[words];
+		this.reachable = new long[(words + 63) >>> 6];
+		this.branchIndex = new int[words];
+		int count = 0;
+		int nbranches = 0;
+		for (int pc = 0; pc != words; ++pc) {
+			this.branchIndex[pc] = -1;
+			if (analysis.isReachableInstruction(pc)) {
+				this.instructions[pc] = decoder.decode(flash, pc);
+				this.reachable[pc >>> 6] |= 1L << pc;
+				count++;
+				if (analysis.isConditionalBranch(pc)) {
+					this.branchIndex[pc] = nbranches++;
+				}
+			}
+		}
+		this.instructionCount = count;
+		// Determine the successors of each conditional branch
+		this.branches = new int[nbranches];
+		this.successorCount = new byte[nbranches];
+		int[][] successors = new int[nbranches][];
+		this.predecessorStart = new int[words + 1];
+		for (int pc = 0; pc != words; ++pc) {
+			int b = this.branchIndex[pc];
+			if (b >= 0) {
+				int[] succs = getSuccessors(pc);
+				this.branches[b] = pc;
+				this.successorCount[b] = (byte) succs.length;
+				successors[b] = succs;
+				for (int s : succs) {
+					if (s >= 0 && s < words) {
+						this.predecessorStart[s + 1]++;
+					}
+				}
+			}
+		}
+		for (int pc = 0; pc != words; ++pc) {
+			this.predecessorStart[pc + 1] += this.predecessorStart[pc];
+		}
+		this.predecessors = new int[this.predecessorStart[words]];
+		int[] next = this.predecessorStart.clone();
+		for (int b = 0; b != nbranches; ++b) {
+			for (int s : successors[b]) {
+				if (s >= 0 && s < words) {
+					this.predecessors[next[s]++] = b;
+				}
+			}
+		}
+		// Construct the reverse control-flow graph
+		int[][] flow = new int[words][];
+		this.flowStart = new int[words + 1];
+		for (int pc = 0; pc != words; ++pc) {
+			if (this.instructions[pc] != null) {
+				flow[pc] = getFlowSuccessors(pc);
+				for (int s : flow[pc]) {
+					if (s >= 0 && s < words) {
+						this.flowStart[s + 1]++;
+					}
+				}
+			}
+		}
+		for (int pc = 0; pc != words; ++pc) {
+			this.flowStart[pc + 1] += this.flowStart[pc];
+		}
+		this.flowPredecessors = new int[this.flowStart[words]];
+		next = this.flowStart.clone();
+		for (int pc = 0; pc != words; ++pc) {
+			if (flow[pc] != null) {
+				for (int s : flow[pc]) {
+					if (s >= 0 && s < words) {
+						this.flowPredecessors[next[s]++] = pc;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the analysis for a given firmware, computing it if this has not already
+	 * been done.
+	 *
+	 * @param firmware The firmware in question.
+	 * @return The analysis.
+	 */
+	public static FirmwareAnalysis of(HexFile firmware) {
+		return CACHE.computeIfAbsent(Long.valueOf(CorpusFile.hash(firmware)), h -> new FirmwareAnalysis(firmware));
+	}
+
+	/**
+	 * Get the size of the flattened firmware.
+	 *
+	 * @return Size in bytes.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Check whether the instruction at a given address is reachable.
+	 *
+	 * @param pc The (word) address in question.
+	 * @return True if reachable.
+	 */
+	public boolean isReachableInstruction(int pc) {
+		return pc >= 0 && pc < this.branchIndex.length && (this.reachable[pc >>> 6] & (1L << pc)) != 0;
+	}
+
+	/**
+	 * Check whether the instruction at a given address is a reachable conditional
+	 * branch.
+	 *
+	 * @param pc The (word) address in question.
+	 * @return True if a reachable conditional branch.
+	 */
+	public boolean isConditionalBranch(int pc) {
+		return pc >= 0 && pc < this.branchIndex.length && this.branchIndex[pc] >= 0;
+	}
+
+	/**
+	 * Get the instruction at a given reachable address.
+	 *
+	 * @param pc The (word) address in question.
+	 * @return The decoded instruction.
+	 */
+	public AvrInstruction getInstruction(int pc) {
+		AvrInstruction insn = this.instructions[pc];
+		if (insn == null) {
+			throw new IllegalArgumentException("unreachable instruction: " + pc); //$NON-NLS-1$
+		}
+		return insn;
+	}
+
+	/**
+	 * Get the reachable instructions in the form used by
+	 * <code>CoverageAnalysis</code>. That is, a bitset indexed by byte address
+	 * where every byte of a reachable instruction is set.
+	 *
+	 * @return Set of reachable code bytes.
+	 */
+	public BitSet getReachableInstructions() {
+		BitSet bytes = new BitSet();
+		for (int pc = 0; pc != this.instructions.length; ++pc) {
+			AvrInstruction insn = this.instructions[pc];
+			if (insn != null) {
+				bytes.set(pc << 1, (pc << 1) + insn.getWidth());
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get the number of reachable instructions.
+	 *
+	 * @return Number of instructions.
+	 */
+	public int getInstructionCount() {
+		return this.instructionCount;
+	}
+
+	/**
+	 * Get the number of reachable conditional branches.
+	 *
+	 * @return Number of branches.
+	 */
+	public int getBranchCount() {
+		return this.branches.length;
+	}
+
+	/**
+	 * Create a new (empty) record of coverage against this analysis.
+	 *
+	 * @return The coverage record.
+	 */
+	public Coverage newCoverage() {
+		return new Coverage(this);
+	}
+
+	/**
+	 * Determine the successors of a given conditional branch. A conditional
+	 * branch is covered once all of its successors have been executed.
+	 *
+	 * @param pc The (word) address of the branch.
+	 * @return Its distinct successors.
+	 */
+	private int[] getSuccessors(int pc) {
+		AvrInstruction insn = getInstruction(pc);
+		int next = pc + insn.getWidth();
+		int target;
+		if (insn instanceof AvrInstruction.FlagRelativeAddress) {
+			target = next + ((AvrInstruction.FlagRelativeAddress) insn).k;
+		} else if (insn instanceof AvrInstruction.RelativeAddress) {
+			target = next + ((AvrInstruction.RelativeAddress) insn).k;
+		} else {
+			// Skip instruction (e.g. SBIS), whose target follows the next instruction
+			target = next + getInstruction(next).getWidth();
+		}
+		return next == target ? new int[] { next } : new int[] { next, target };
+	}
+
+	/**
+	 * Determine the successors of a given instruction in the static control-flow
+	 * graph. A call is considered to flow both to its target and to the following
+	 * instruction (i.e. where it returns to), whilst returns and indirect jumps
+	 * have no successors.
+	 *
+	 * @param pc The (word) address of the instruction.
+	 * @return Its successors.
+	 */
+	private int[] getFlowSuccessors(int pc) {
+		AvrInstruction insn = getInstruction(pc);
+		int next = pc + insn.getWidth();
+		if (isConditionalBranch(pc)) {
+			return getSuccessors(pc);
+		}
+		switch (insn.getOpcode()) {
+		case RJMP:
+			return new int[] { next + ((AvrInstruction.RJMP) insn).k };
+		case JMP:
+			return new int[] { ((AvrInstruction.JMP) insn).k };
+		case RCALL:
+			return new int[] { next + ((AvrInstruction.RCALL) insn).k, next };
+		case CALL:
+			return new int[] { ((AvrInstruction.CALL) insn).k, next };
+		case RET:
+		case RETI:
+		case IJMP:
+		case EIJMP:
+			return new int[0];
+		default:
+			return new int[] { next };
+		}
+	}
+
+	/**
+	 * Records the coverage obtained against a given analysis. Instruction and
+	 * branch coverage are maintained incrementally as code is recorded, such
+	 * that each is available in constant time. This is not thread safe.
+	 */
+	public static final class Coverage {
+		/**
+		 * The analysis against which coverage is recorded.
+		 */
+		private final FirmwareAnalysis analysis;
+		/**
+		 * Code bytes executed so far.
+		 */
+		private long[] executed = new long[0];
+		/**
+		 * Number of successors of each conditional branch executed so far.
+		 */
+		private final byte[] hits;
+		/**
+		 * Number of reachable instructions executed so far.
+		 */
+		private int coveredInstructions;
+		/**
+		 * Number of conditional branches covered so far.
+		 */
+		private int coveredBranches;
+		/**
+		 * Distance from each address to the nearest uncovered branch, as computed
+		 * when <code>distancesFor</code> branches were covered.
+		 */
+		private int @Nullable [] distances;
+		/**
+		 * Number of branches covered when <code>distances</code> was computed.
+		 */
+		private int distancesFor = -1;
+
+		/**
+		 * Construct an empty coverage record.
+		 *
+		 * @param analysis The analysis against which coverage is recorded.
+		 */
+		Coverage(FirmwareAnalysis analysis) {
+			this.analysis = analysis;
+			this.hits = new byte[analysis.branches.length];
+		}
+
+		/**
+		 * Get the analysis against which coverage is recorded.
+		 *
+		 * @return The analysis.
+		 */
+		public FirmwareAnalysis getAnalysis() {
+			return this.analysis;
+		}
+
+		/**
+		 * Record some code as having been executed. Only code not previously
+		 * executed is examined.
+		 *
+		 * @param code Set of code bytes executed.
+		 */
+		public void record(BitSet code) {
+			long[] words = code.toLongArray();
+			if (words.length > this.executed.length) {
+				long[] tmp = new long[words.length];
+				System.arraycopy(this.executed, 0, tmp, 0, this.executed.length);
+				this.executed = tmp;
+			}
+			for (int i = 0; i != words.length; ++i) {
+				// NOTE: an instruction is executed when its first byte is (i.e. even bits).
+				long fresh = words[i] & ~this.executed[i] & 0x5555555555555555L;
+				this.executed[i] |= words[i];
+				while (fresh != 0) {
+					int bit = Long.numberOfTrailingZeros(fresh);
+					fresh &= fresh - 1;
+					executed(((i << 6) + bit) >>> 1);
+				}
+			}
+		}
+
+		/**
+		 * Check whether the instruction at a given address has been executed.
+		 *
+		 * @param pc The (word) address in question.
+		 * @return True if executed.
+		 */
+		public boolean wasCovered(int pc) {
+			int i = (pc << 1) >>> 6;
+			return i < this.executed.length && (this.executed[i] & (1L << (pc << 1))) != 0;
+		}
+
+		/**
+		 * Check whether the instruction at a given address is a conditional branch
+		 * which has been covered.
+		 *
+		 * @param pc The (word) address in question.
+		 * @return True if a covered conditional branch.
+		 */
+		public boolean isConditionalBranchCovered(int pc) {
+			if (!this.analysis.isConditionalBranch(pc)) {
+				return false;
+			}
+			int b = this.analysis.branchIndex[pc];
+			return this.hits[b] == this.analysis.successorCount[b];
+		}
+
+		/**
+		 * Determine the distance from each instruction to the nearest conditional
+		 * branch which is not yet covered. This is the number of edges which must be
+		 * traversed in the static control-flow graph to reach that branch, where
+		 * <code>Integer.MAX_VALUE</code> indicates none is reachable. The result is
+		 * only recomputed when the set of covered branches changes, and must not be
+		 * modified.
+		 *
+		 * @return Distance for each (word) address.
+		 */
+		public int[] getBranchDistances() {
+			int[] dist = this.distances;
+			if (dist != null && this.distancesFor == this.coveredBranches) {
+				return dist;
+			}
+			FirmwareAnalysis a = this.analysis;
+			dist = new int[a.branchIndex.length];
+			Arrays.fill(dist, Integer.MAX_VALUE);
+			// Breadth-first search backwards from every uncovered branch
+			int[] queue = new int[dist.length];
+			int head = 0;
+			int tail = 0;
+			for (int b = 0; b != a.branches.length; ++b) {
+				if (this.hits[b] != a.successorCount[b]) {
+					dist[a.branches[b]] = 0;
+					queue[tail++] = a.branches[b];
+				}
+			}
+			while (head != tail) {
+				int pc = queue[head++];
+				for (int i = a.flowStart[pc]; i != a.flowStart[pc + 1]; ++i) {
+					int p = a.flowPredecessors[i];
+					if (dist[p] == Integer.MAX_VALUE) {
+						dist[p] = dist[pc] + 1;
+						queue[tail++] = p;
+					}
+				}
+			}
+			this.distances = dist;
+			this.distancesFor = this.coveredBranches;
+			return dist;
+		}
+
+		/**
+		 * Get the number of conditional branches covered.
+		 *
+		 * @return Number of branches covered.
+		 */
+		public int getCoveredBranches() {
+			return this.coveredBranches;
+		}
+
+		/**
+		 * Get the percentage of reachable instructions executed.
+		 *
+		 * @return Instruction coverage (as a percentage).
+		 */
+		public double getInstructionCoverage() {
+			return (100.0 * this.coveredInstructions) / this.analysis.instructionCount;
+		}
+
+		/**
+		 * Get the percentage of conditional branches covered.
+		 *
+		 * @return Branch coverage (as a percentage).
+		 */
+		public double getBranchCoverage() {
+			return (100.0 * this.coveredBranches) / this.analysis.branches.length;
+		}
+
+		/**
+		 * Update the counters for an instruction executed for the first time.
+		 *
+		 * @param pc The (word) address of the instruction.
+		 */
+		private void executed(int pc) {
+			FirmwareAnalysis a = this.analysis;
+			if (pc >= a.branchIndex.length) {
+				return;
+			} else if (a.isReachableInstruction(pc)) {
+				this.coveredInstructions++;
+			}
+			for (int i = a.predecessorStart[pc]; i != a.predecessorStart[pc + 1]; ++i) {
+				int b = a.predecessors[i];
+				if (++this.hits[b] == a.successorCount[b]) {
+					this.coveredBranches++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package tinyboycov.util;
+
+import javr.core.AVR;
+import javr.core.AvrDecoder;
+import javr.core.AvrInstruction;
+import javr.io.HexFile;
+import javr.memory.ByteMemory;
+
+/**
+ * A firmware image which has been flattened into a flash memory, and
+ * pre-decoded into a table of instructions. This is constructed once for a
+ * given firmware, and can then be shared (read-only) between any number of
+ * emulators. Thus, uploading the firmware into an emulator amounts to no more
+ * than a pointer swap for code memory, along with a single array copy for the
+ * decoded instructions.
+ */
+public class FirmwareImage {
+	/**
+	 * Added to the polled bit of a polling loop which continues whilst that bit
+	 * is set (i.e. rather than whilst it is clear).
+	 */
+	public static final int POLL_WHILE_SET = 8;
+	/**
+	 * I/O address of the <code>PINB</code> register.
+	 */
+	private static final int PINB = 0x16;
+	/**
+	 * The firmware from which this image was constructed.
+	 */
+	private final HexFile firmware;
+	/**
+	 * Code memory containing the flattened firmware. This is never written after
+	 * construction.
+	 */
+	private final ByteMemory flash;
+	/**
+	 * Decoded instruction at each (word) address in code memory, or
+	 * <code>null</code> if the bytes at that address could not be decoded. Such
+	 * entries are simply decoded lazily by the AVR as normal.
+	 */
+	private final AvrInstruction[] decoded;
+	/**
+	 * Identifies those (word) addresses where a polling loop begins. That is, a
+	 * <code>SBIS</code> or <code>SBIC</code> on <code>PINB</code> followed by a
+	 * <code>RJMP</code> back to it. Each entry is either <code>-1</code>, or the
+	 * bit polled (plus <code>POLL_WHILE_SET</code> for <code>SBIC</code>).
+	 */
+	private final byte[] polls;
+	/**
+	 * Identifies those (word) addresses holding a skip instruction (i.e.
+	 * <code>CPSE</code>, <code>SBRC</code>, <code>SBRS</code>, <code>SBIC</code>
+	 * or <code>SBIS</code>). Each entry is either <code>-1</code>, or the address
+	 * reached when the following instruction is skipped.
+	 */
+	private final int[] skips;
+
+	/**
+	 * Construct a firmware image for a code memory of a given size.
+	 *
+	 * @param firmware The firmware to flatten.
+	 * @param size     The size (in bytes) of code memory.
+	 */
+	public FirmwareImage(HexFile firmware, int size) {
+		this.firmware = firmware;
+		this.flash = new ByteMemory(size);
+		firmware.uploadTo(this.flash);
+		// NOTE: the AVR indexes its decoded table by word address, but allocates it
+		// according to the size of code memory in bytes.
+		this.decoded = new AvrInstruction[size];
+		AvrDecoder decoder = new AvrDecoder();
+		for (int pc = 0; pc != (size / 2); ++pc) {
+			try {
+				this.decoded[pc] = decoder.decode(this.flash, pc);
+			} catch (RuntimeException e) {
+				// Not a valid instruction (e.g. data, or truncated at end of memory).
+			}
+		}
+		this.polls = new byte[size / 2];
+		for (int pc = 0; pc != this.polls.length; ++pc) {
+			this.polls[pc] = (byte) findPoll(pc);
+		}
+		this.skips = new int[size / 2];
+		for (int pc = 0; pc != this.skips.length; ++pc) {
+			this.skips[pc] = findSkip(this.decoded, pc);
+		}
+	}
+
+	/**
+	 * Get the firmware from which this image was constructed.
+	 *
+	 * @return The firmware.
+	 */
+	public HexFile getFirmware() {
+		return this.firmware;
+	}
+
+	/**
+	 * Get the code memory holding this image. This must not be modified.
+	 *
+	 * @return The code memory.
+	 */
+	public AVR.Memory getFlash() {
+		return this.flash;
+	}
+
+	/**
+	 * Determine whether a polling loop begins at a given address.
+	 *
+	 * @param pc The (word) address in question.
+	 * @return Either <code>-1</code> if no polling loop begins here, or the bit of
+	 *         <code>PINB</code> polled (plus <code>POLL_WHILE_SET</code> if the
+	 *         loop continues whilst that bit is set).
+	 */
+	public int getPoll(int pc) {
+		return this.polls[pc];
+	}
+
+	/**
+	 * Determine whether a skip instruction is held at a given address.
+	 *
+	 * @param pc The (word) address in question.
+	 * @return Either <code>-1</code> if no skip instruction is held here, or the
+	 *         address reached when it skips the following instruction.
+	 */
+	public int getSkip(int pc) {
+		return this.skips[pc];
+	}
+
+	/**
+	 * Get the pre-decoded instruction table for this image. This must not be
+	 * modified.
+	 *
+	 * @return The decoded instructions, indexed by word address.
+	 */
+	public AvrInstruction[] getDecoded() {
+		return this.decoded;
+	}
+
+	/**
+	 * Determine whether a polling loop begins at a given address.
+	 *
+	 * @param pc The (word) address in question.
+	 * @return As for <code>getPoll()</code>.
+	 */
+	private int findPoll(int pc) {
+		if ((pc + 1) >= this.polls.length) {
+			return -1;
+		}
+		AvrInstruction insn = this.decoded[pc];
+		AvrInstruction next = this.decoded[pc + 1];
+		if (!(next instanceof AvrInstruction.RJMP) || ((AvrInstruction.RJMP) next).k != -2) {
+			return -1;
+		} else if (insn instanceof AvrInstruction.SBIS && ((AvrInstruction.SBIS) insn).A == PINB) {
+			return ((AvrInstruction.SBIS) insn).b;
+		} else if (insn instanceof AvrInstruction.SBIC && ((AvrInstruction.SBIC) insn).A == PINB) {
+			return ((AvrInstruction.SBIC) insn).b + POLL_WHILE_SET;
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Determine whether a skip instruction is held at a given address in a table
+	 * of decoded instructions.
+	 *
+	 * @param decoded The decoded instructions, indexed by word address.
+	 * @param pc      The (word) address in question.
+	 * @return As for <code>getSkip()</code>.
+	 */
+	public static int findSkip(AvrInstruction[] decoded, int pc) {
+		AvrInstruction insn = decoded[pc];
+		if (!(insn instanceof AvrInstruction.CPSE || insn instanceof AvrInstruction.SBRC
+				|| insn instanceof AvrInstruction.SBRS || insn instanceof AvrInstruction.SBIC
+				|| insn instanceof AvrInstruction.SBIS) || (pc + 1) >= decoded.length) {
+			return -1;
+		}
+		AvrInstruction next = decoded[pc + 1];
+		return next == null ? -1 : pc + 1 + next.getWidth();
+	}
+}
@@ -0,0 +1,813 @@
+package tinyboycov.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.util.Iterator;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import javr.core.AVR;
+import javr.core.AvrInstruction;
+import javr.core.Wire;
+import javr.memory.ByteMemory;
+import javr.memory.IoMemory;
+import javr.memory.MultiplexedMemory;
+import javr.util.IdealWire;
+import tinyboy.core.ControlPad;
+import tinyboy.core.TinyBoyEmulator;
+
+/**
+ * An extended version of the TinyBoy emulator which is suitable for fuzz
+ * testing. In particular, the button inputs are driven from a given input
+ * sequence rather than from the user, and the set of instructions executed is
+ * recorded. Furthermore, the complete state of the machine can be checkpointed
+ * and subsequently restored. This allows input sequences which share a common
+ * prefix to resume from the end of that prefix, rather than replaying it from
+ * scratch.
+ */
+public class FuzzEmulator extends TinyBoyEmulator {
+	/**
+	 * Number of inputs read for each step of a <code>ButtonInput</code> (i.e. one
+	 * per button).
+	 */
+	private static final int NUM_BUTTONS = ControlPad.Button.values().length;
+	/**
+	 * Maximum number of skipped iterations of a polling loop which are replayed
+	 * into the edge map. This must exceed the largest hit count bucket.
+	 */
+	private static final int MAX_REPLAY = 256;
+	// NOTE: the following fields are not exposed by the emulator and, hence, we
+	// have no choice but to access them reflectively when checkpointing.
+	private static final Field AVR_PC = field(AVR.class, "PC"); //$NON-NLS-1$
+	private static final Field AVR_SREG = field(AVR.class, "SREG"); //$NON-NLS-1$
+	private static final Field AVR_DECODED = field(AVR.class, "decoded"); //$NON-NLS-1$
+	private static final Field TINYBOY_PAD = field(TinyBoyEmulator.class, "pad"); //$NON-NLS-1$
+	private static final Field PAD_STATE = field(ControlPad.class, "state"); //$NON-NLS-1$
+	private static final Field WIRE_STATE = field(IdealWire.class, "state"); //$NON-NLS-1$
+	private static final Field MEMORY_BANKS = field(MultiplexedMemory.class, "memories"); //$NON-NLS-1$
+	private static final Field IO_SPACE = field(IoMemory.class, "memory"); //$NON-NLS-1$
+	private static final Field MEMORY_BYTES = field(ByteMemory.class, "data"); //$NON-NLS-1$
+	// NOTE: these are written after every translated block and, hence, are
+	// accessed through var handles rather than reflectively.
+	private static final VarHandle AVR_PC_HANDLE = handle(AVR.class, "PC"); //$NON-NLS-1$
+	private static final VarHandle AVR_SREG_HANDLE = handle(AVR.class, "SREG"); //$NON-NLS-1$
+
+	/**
+	 * The AVR microcontroller at the heart of this emulator.
+	 */
+	private final AVR avr;
+	/**
+	 * The AVR's table of decoded instructions.
+	 */
+	private final AvrInstruction[] decoded;
+	/**
+	 * The AVR's general purpose registers (i.e. the first bank of data memory).
+	 */
+	private final byte[] registers;
+	/**
+	 * The AVR's I/O space, through which its ports are accessed.
+	 */
+	private final IoMemory ports;
+	/**
+	 * The bytes backing the AVR's I/O space.
+	 */
+	private final byte[] io;
+	/**
+	 * The AVR's SRAM, which replaces that constructed by the emulator.
+	 */
+	private final PagedMemory sram;
+	/**
+	 * Read-only view of the AVR's data memory.
+	 */
+	private final MemoryView state;
+	/**
+	 * Provides inputs to the button wires, whilst counting how many have been
+	 * read.
+	 */
+	private final InputCursor cursor = new InputCursor();
+	/**
+	 * Records the set of instructions executed since the last reset.
+	 */
+	private final CoverageRecorder coverage;
+	/**
+	 * Records the edges executed since the last reset.
+	 */
+	private final EdgeMap edges = new EdgeMap();
+	/**
+	 * Headless display which replaces the emulator's own. This only stores pixels
+	 * when they can be seen.
+	 */
+	private final DisplaySink display;
+	/**
+	 * The firmware image currently loaded (if any).
+	 */
+	private @Nullable FirmwareImage image;
+	/**
+	 * Indicates whether polling loops should be fast-forwarded.
+	 */
+	private boolean fastForward = true;
+	/**
+	 * Translation of the loaded firmware bound to this emulator (if enabled).
+	 */
+	private @Nullable TranslatedCode translation;
+	/**
+	 * Number of instructions executed since this emulator was constructed.
+	 */
+	private long cycles;
+
+	/**
+	 * Construct a new emulator whose buttons are connected to a given set of
+	 * symbolic wires. The emulator is headless, though its display can be shown
+	 * using a <code>DisplayMirror</code>.
+	 *
+	 * @param wires The symbolic wires for the buttons.
+	 */
+	public FuzzEmulator(SymbolicPullWire[] wires) {
+		super(labels -> getWire(wires, labels));
+		this.avr = getAVR();
+		this.decoded = (AvrInstruction[]) get(AVR_DECODED, this.avr);
+		// NOTE: data memory is laid out as registers, then I/O space, then SRAM.
+		Object[] banks = (Object[]) get(MEMORY_BANKS, this.avr.getData());
+		this.registers = (byte[]) get(MEMORY_BYTES, banks[0]);
+		this.ports = (IoMemory) banks[1];
+		this.io = (byte[]) get(MEMORY_BYTES, get(IO_SPACE, this.ports));
+		this.sram = new PagedMemory(((AVR.Memory) banks[2]).size());
+		banks[2] = this.sram;
+		this.state = new MemoryView(this.registers, this.io, this.sram.getBytes());
+		this.coverage = new CoverageRecorder(this.avr.getCode().size());
+		this.display = new DisplaySink(getDisplayWidth(), getDisplayHeight(), this.avr.getPin("SCK"), //$NON-NLS-1$
+				this.avr.getPin("MOSI"), false); //$NON-NLS-1$
+		for (int i = 0; i != wires.length; ++i) {
+			wires[i].bind(this.cursor);
+		}
+	}
+
+	/**
+	 * Load a pre-decoded firmware image into this emulator. The image's code
+	 * memory is shared, rather than copied, and its decoded instructions are
+	 * reinstated on every reset. Hence, there is no need to upload the firmware
+	 * for each input.
+	 *
+	 * @param image The firmware image to load.
+	 */
+	public void load(FirmwareImage image) {
+		this.image = image;
+		this.avr.setCode(image.getFlash());
+		if (this.translation != null) {
+			setTranslated(true);
+		}
+		reset();
+	}
+
+	/**
+	 * Bind a given input sequence to this emulator.
+	 *
+	 * @param input  The input sequence driving the buttons.
+	 * @param offset The number of inputs already read from this sequence.
+	 */
+	public void bind(Iterator<Boolean> input, int offset) {
+		this.cursor.input = input;
+		this.cursor.fast = input instanceof BooleanIterator ? (BooleanIterator) input : null;
+		this.cursor.seekable = input instanceof ButtonInput ? (ButtonInput) input : null;
+		this.cursor.reads = offset;
+	}
+
+	/**
+	 * Get the number of inputs read from the bound input sequence.
+	 *
+	 * @return Number of inputs read.
+	 */
+	public int getReads() {
+		return this.cursor.reads;
+	}
+
+	/**
+	 * Get the display attached to this emulator.
+	 *
+	 * @return The display.
+	 */
+	public DisplaySink getDisplay() {
+		return this.display;
+	}
+
+	/**
+	 * Get the set of instructions executed since the last reset (or restore).
+	 *
+	 * @return Recorder of instructions executed.
+	 */
+	public CoverageRecorder getCoverage() {
+		return this.coverage;
+	}
+
+	/**
+	 * Get the edges executed since the last reset (or restore).
+	 *
+	 * @return Map of edges executed.
+	 */
+	public EdgeMap getEdges() {
+		return this.edges;
+	}
+
+	/**
+	 * Get the current contents of data memory. This is read directly from the
+	 * memory backing each bank and, hence, does not consume any inputs from the
+	 * bound input sequence.
+	 *
+	 * @return Copy of data memory.
+	 */
+	public byte[] getState() {
+		return this.state.toByteArray();
+	}
+
+	/**
+	 * Get a read-only view of data memory. This is not a copy and, hence, is only
+	 * meaningful until this emulator is next clocked, reset or restored.
+	 *
+	 * @return View of data memory.
+	 */
+	public MemoryView getStateView() {
+		return this.state;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		FirmwareImage img = this.image;
+		if (img != null) {
+			// Reset has discarded the decoded instructions, so reinstate them.
+			AvrInstruction[] table = img.getDecoded();
+			System.arraycopy(table, 0, this.decoded, 0, table.length);
+		}
+		this.display.reset();
+		this.coverage.clear();
+		this.edges.clear();
+	}
+
+	/**
+	 * Enable or disable fast-forwarding of polling loops. When enabled, a loop
+	 * which does nothing but poll a button is not executed iteration by
+	 * iteration. Instead, the bound input is searched for the step at which the
+	 * loop will exit, and execution resumes from there. This requires that a
+	 * firmware image is loaded, and that the bound input is a
+	 * <code>ButtonInput</code>. The coverage obtained is unaffected.
+	 *
+	 * @param enabled Flag to enable fast-forwarding.
+	 */
+	public void setFastForward(boolean enabled) {
+		this.fastForward = enabled;
+	}
+
+	/**
+	 * Enable or disable execution of translated code. When enabled, the loaded
+	 * firmware is translated (see <code>Translator</code>), and whole blocks are
+	 * then executed at a time wherever possible, rather than being interpreted
+	 * instruction by instruction. This requires that a firmware image is loaded,
+	 * and is only done whilst no peripherals need clocking (i.e. the display is
+	 * not storing) and interrupts are disabled. The coverage
+	 * obtained is unaffected. If the firmware cannot be translated, then the
+	 * interpreter is used throughout.
+	 *
+	 * @param enabled Flag to enable translation.
+	 */
+	public void setTranslated(boolean enabled) {
+		FirmwareImage img = this.image;
+		TranslatedCode code = null;
+		if (enabled && img != null) {
+			code = Translator.of(img).newInstance();
+			if (code != null && !code.bind(this.avr, this.coverage, this.edges)) {
+				code = null;
+			}
+		}
+		this.translation = code;
+	}
+
+	/**
+	 * Get the number of instructions executed since this emulator was
+	 * constructed. A polling loop which is fast-forwarded counts as one.
+	 *
+	 * @return Number of instructions executed.
+	 */
+	public long getCycles() {
+		return this.cycles;
+	}
+
+	@Override
+	public void clock() throws AVR.HaltedException {
+		TranslatedCode code = this.translation;
+		if (code != null && !this.display.isStoring() && executeTranslated(code)) {
+			return;
+		}
+		int pc = this.avr.getPC();
+		this.coverage.hit(pc);
+		this.edges.hit(pc);
+		this.cycles++;
+		FirmwareImage img = this.image;
+		if (this.fastForward && img != null) {
+			int poll = img.getPoll(pc);
+			if (poll >= 0 && fastForward(pc, poll)) {
+				return;
+			}
+		}
+		if (this.display.isStoring()) {
+			clockPeripherals();
+		}
+		this.avr.clock();
+		// The instruction skipped by a skip instruction also counts as covered,
+		// since its code is read to determine its width (as for AutomatedTester).
+		int skip = img != null ? img.getSkip(pc) : FirmwareImage.findSkip(this.decoded, pc);
+		if (skip >= 0 && this.avr.getPC() == skip) {
+			this.coverage.hit(pc + 1);
+		}
+	}
+
+	/**
+	 * Execute translated blocks from the current address for as long as possible.
+	 * That is, until an instruction is reached which must be interpreted. Since
+	 * no such instruction is executed, no peripheral can be affected and no input
+	 * can be read. Hence, there is no need to return between blocks.
+	 *
+	 * @param code The translated code.
+	 * @return True if any instructions were executed, false otherwise.
+	 */
+	private boolean executeTranslated(TranslatedCode code) {
+		int sreg = this.avr.getStatusRegister();
+		if ((sreg & AVR.INTERRUPT_FLAG) != 0) {
+			// Cannot safely execute blocks (e.g. an interrupt could fire).
+			return false;
+		}
+		int pc = this.avr.getPC();
+		code.sreg = sreg;
+		int next = code.execute(pc);
+		if (next < 0) {
+			return false;
+		}
+		long n = 0;
+		do {
+			n += code.executed;
+			pc = next;
+			next = code.execute(pc);
+		} while (next >= 0);
+		AVR_PC_HANDLE.set(this.avr, pc);
+		AVR_SREG_HANDLE.set(this.avr, code.sreg);
+		this.cycles += n;
+		return true;
+	}
+
+	@Override
+	public void clockPeripherals() {
+		// NOTE: the control pad is not clocked, since symbolic wires have no state.
+		this.display.clock();
+	}
+
+	@Override
+	public boolean isPixelSet(int x, int y) {
+		return this.display.isSet(x, y);
+	}
+
+	@Override
+	public boolean getButtonState(ControlPad.Button button) {
+		// NOTE: reading the button wires would consume inputs.
+		return false;
+	}
+
+	/**
+	 * Take a checkpoint of the complete machine state. This includes the
+	 * processor, data memory, pins, display and control pad, as well as the
+	 * coverage obtained and number of inputs read so far.
+	 *
+	 * @return Snapshot of the machine state.
+	 */
+	public Snapshot snapshot() {
+		ControlPad pad = (ControlPad) get(TINYBOY_PAD, this);
+		Wire[] pins = this.avr.getPins();
+		Object[] pinStates = new Object[pins.length];
+		for (int i = 0; i != pins.length; ++i) {
+			if (pins[i] instanceof IdealWire) {
+				pinStates[i] = get(WIRE_STATE, pins[i]);
+			}
+		}
+		boolean[] padState = (boolean[]) get(PAD_STATE, pad);
+		return new Snapshot(getInt(AVR_PC, this.avr), getInt(AVR_SREG, this.avr), this.registers.clone(),
+				this.io.clone(), this.sram.save(), pinStates, this.display.save(),
+				padState == null ? null : padState.clone(), this.coverage.save(), this.edges.save(), this.cursor.reads);
+	}
+
+	/**
+	 * Check whether a given checkpoint can be restored without garbling the
+	 * display. Whilst storing pixels, the display must be restored from a
+	 * checkpoint taken whilst storing, since otherwise its position within the
+	 * current frame is unknown.
+	 *
+	 * @param snapshot The snapshot in question.
+	 * @return True if it can be restored.
+	 */
+	public boolean canRestore(Snapshot snapshot) {
+		return !this.display.isStoring() || DisplaySink.isStored(snapshot.display);
+	}
+
+	/**
+	 * Restore the machine to a state previously checkpointed. The emulator must
+	 * have the same firmware uploaded as when the snapshot was taken.
+	 *
+	 * @param snapshot The snapshot to restore.
+	 */
+	public void restore(Snapshot snapshot) {
+		ControlPad pad = (ControlPad) get(TINYBOY_PAD, this);
+		// Restore data memory. Observe this must happen before the pins are restored,
+		// since writing an output port drives the pins. Only SRAM pages written are
+		// restored.
+		System.arraycopy(snapshot.registers, 0, this.registers, 0, this.registers.length);
+		for (int i = 0; i != snapshot.io.length; ++i) {
+			this.ports.poke(i, snapshot.io[i]);
+		}
+		this.sram.restore(snapshot.sram);
+		Wire[] pins = this.avr.getPins();
+		for (int i = 0; i != pins.length; ++i) {
+			Object state = snapshot.pins[i];
+			if (state != null) {
+				set(WIRE_STATE, pins[i], state);
+			}
+		}
+		setInt(AVR_PC, this.avr, snapshot.pc);
+		setInt(AVR_SREG, this.avr, snapshot.sreg);
+		this.display.restore(snapshot.display);
+		boolean[] padState = snapshot.padState;
+		if (padState != null) {
+			System.arraycopy(padState, 0, get(PAD_STATE, pad), 0, padState.length);
+		}
+		this.coverage.restore(snapshot.coverage);
+		this.edges.restore(snapshot.edges);
+		this.cursor.reads = snapshot.reads;
+	}
+
+	/**
+	 * Fast-forward a polling loop beginning at a given address. Each iteration of
+	 * the loop reads one step of input, and exits at the first step where the
+	 * polled button is in the required state. Hence, all iterations before that
+	 * step can be skipped. This leaves the machine at the start of the loop,
+	 * ready for the (real) iteration which reads that step.
+	 *
+	 * @param pc   The address of the loop.
+	 * @param poll The polled bit, as returned from
+	 *             <code>FirmwareImage.getPoll()</code>.
+	 * @return True if any iterations were skipped, false otherwise.
+	 */
+	private boolean fastForward(int pc, int poll) {
+		ButtonInput in = this.cursor.seekable;
+		int button = getButton(poll & (FirmwareImage.POLL_WHILE_SET - 1));
+		if (in == null || button < 0 || (this.avr.getStatusRegister() & AVR.INTERRUPT_FLAG) != 0) {
+			// Cannot safely fast-forward (e.g. an interrupt could fire).
+			return false;
+		}
+		// NOTE: the seek stops at the last step of the input at the latest, since
+		// the real iteration reading that step ends the run.
+		int skipped = in.seek(button, (poll & FirmwareImage.POLL_WHILE_SET) == 0);
+		if (skipped == 0) {
+			return false;
+		}
+		this.cursor.reads += skipped * NUM_BUTTONS;
+		// Account for the skipped iterations in the coverage. Since edge hit counts
+		// saturate, there is no need to replay more than a bounded number of them.
+		// NOTE: the iteration which exits (i.e. skips the jump) is interpreted as
+		// normal and, hence, so is the coverage of the skipped jump.
+		this.coverage.hit(pc + 1);
+		int n = Math.min(skipped, MAX_REPLAY);
+		for (int i = 0; i != n; ++i) {
+			this.edges.hit(pc + 1);
+			if (i != (n - 1)) {
+				this.edges.hit(pc);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determine which button (if any) is connected to a given bit of
+	 * <code>PINB</code>. This mirrors the wiring in <code>getWire()</code>.
+	 *
+	 * @param bit The bit in question.
+	 * @return The button's ordinal, or <code>-1</code> if not a button.
+	 */
+	private static int getButton(int bit) {
+		switch (bit) {
+		case 1:
+			return ControlPad.Button.UP.ordinal();
+		case 3:
+			return ControlPad.Button.DOWN.ordinal();
+		case 4:
+			return ControlPad.Button.LEFT.ordinal();
+		case 5:
+			return ControlPad.Button.RIGHT.ordinal();
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Determine the wire to use for a given set of pin labels. Pins connected to
+	 * buttons are bound to the appropriate symbolic wire, whilst all others are
+	 * ideal wires.
+	 *
+	 * @param wires  The symbolic wires for the buttons.
+	 * @param labels Labels of the pin in question.
+	 * @return Wire for the given pin.
+	 */
+	private static Wire getWire(SymbolicPullWire[] wires, String[] labels) {
+		switch (labels[0]) {
+		case "PB1": //$NON-NLS-1$
+			return wires[ControlPad.Button.UP.ordinal()];
+		case "PB3": //$NON-NLS-1$
+			return wires[ControlPad.Button.DOWN.ordinal()];
+		case "PB4": //$NON-NLS-1$
+			return wires[ControlPad.Button.LEFT.ordinal()];
+		case "PB5": //$NON-NLS-1$
+			return wires[ControlPad.Button.RIGHT.ordinal()];
+		default:
+			return new IdealWire(labels);
+		}
+	}
+
+	/**
+	 * Lookup a given field and make it accessible.
+	 *
+	 * @param clazz Class declaring the field.
+	 * @param name  Name of the field.
+	 * @return The accessible field.
+	 */
+	private static Field field(Class<?> clazz, String name) {
+		try {
+			Field f = clazz.getDeclaredField(name);
+			f.setAccessible(true);
+			return f;
+		} catch (NoSuchFieldException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Lookup a var handle for a given (private) field.
+	 *
+	 * @param clazz Class declaring the field.
+	 * @param name  Name of the field.
+	 * @return The var handle.
+	 */
+	private static VarHandle handle(Class<?> clazz, String name) {
+		try {
+			return MethodHandles.privateLookupIn(clazz, MethodHandles.lookup()).findVarHandle(clazz, name,
+					int.class);
+		} catch (NoSuchFieldException | IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Read the value of a field reflectively.
+	 *
+	 * @param f        Field to read.
+	 * @param instance Object to read from.
+	 * @return Value of the field.
+	 */
+	private static Object get(Field f, Object instance) {
+		try {
+			return f.get(instance);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Read the value of an integer field reflectively.
+	 *
+	 * @param f        Field to read.
+	 * @param instance Object to read from.
+	 * @return Value of the field.
+	 */
+	private static int getInt(Field f, Object instance) {
+		try {
+			return f.getInt(instance);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Write the value of a field reflectively.
+	 *
+	 * @param f        Field to write.
+	 * @param instance Object to write to.
+	 * @param value    Value to write.
+	 */
+	private static void set(Field f, Object instance, Object value) {
+		try {
+			f.set(instance, value);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Write the value of an integer field reflectively.
+	 *
+	 * @param f        Field to write.
+	 * @param instance Object to write to.
+	 * @param value    Value to write.
+	 */
+	private static void setInt(Field f, Object instance, int value) {
+		try {
+			f.setInt(instance, value);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * An immutable checkpoint of the complete machine state.
+	 */
+	public static final class Snapshot {
+		/**
+		 * Program counter.
+		 */
+		private final int pc;
+		/**
+		 * Status register.
+		 */
+		private final int sreg;
+		/**
+		 * General purpose registers.
+		 */
+		private final byte[] registers;
+		/**
+		 * Contents of I/O space.
+		 */
+		private final byte[] io;
+		/**
+		 * Those pages of SRAM which had been written.
+		 */
+		private final PagedMemory.Pages sram;
+		/**
+		 * State of each (non-symbolic) pin, or <code>null</code> for symbolic pins.
+		 */
+		private final @Nullable Object[] pins;
+		/**
+		 * State of the display, as returned from <code>DisplaySink.save()</code>.
+		 */
+		private final byte[] display;
+		/**
+		 * State of the control pad.
+		 */
+		private final boolean @Nullable [] padState;
+		/**
+		 * Coverage obtained up to this point.
+		 */
+		private final long[] coverage;
+		/**
+		 * Edges executed up to this point.
+		 */
+		private final int[] edges;
+		/**
+		 * Number of inputs read up to this point.
+		 */
+		private final int reads;
+
+		Snapshot(int pc, int sreg, byte[] registers, byte[] io, PagedMemory.Pages sram, @Nullable Object[] pins,
+				byte[] display, boolean @Nullable [] padState, long[] coverage, int[] edges, int reads) {
+			this.pc = pc;
+			this.sreg = sreg;
+			this.registers = registers;
+			this.io = io;
+			this.sram = sram;
+			this.pins = pins;
+			this.display = display;
+			this.padState = padState;
+			this.coverage = coverage;
+			this.edges = edges;
+			this.reads = reads;
+		}
+
+		/**
+		 * Get the number of inputs which had been read when this snapshot was taken.
+		 *
+		 * @return Number of inputs read.
+		 */
+		public int getReads() {
+			return this.reads;
+		}
+	}
+
+	/**
+	 * Supplies inputs to the symbolic wires from the bound input sequence, whilst
+	 * counting the number read.
+	 */
+	private static final class InputCursor {
+		/**
+		 * The input sequence currently bound.
+		 */
+		private @Nullable Iterator<Boolean> input;
+		/**
+		 * The input sequence currently bound, if it supports reading without
+		 * boxing.
+		 */
+		private @Nullable BooleanIterator fast;
+		/**
+		 * The input sequence currently bound, if it can be searched ahead.
+		 */
+		private @Nullable ButtonInput seekable;
+		/**
+		 * Number of inputs read so far.
+		 */
+		private int reads;
+
+		/**
+		 * Read the next input.
+		 *
+		 * @return Next input, or <code>false</code> if none.
+		 */
+		public boolean next() {
+			BooleanIterator f = this.fast;
+			if (f != null) {
+				this.reads++;
+				return f.nextBoolean();
+			}
+			Iterator<Boolean> in = this.input;
+			if (in == null) {
+				return false;
+			}
+			this.reads++;
+			return in.next().booleanValue();
+		}
+	}
+
+	/**
+	 * A wire whose value is determined by an input sequence. Every read of the
+	 * wire consumes one input.
+	 */
+	public static class SymbolicPullWire implements Wire {
+		/**
+		 * Labels of the pin this wire is connected to.
+		 */
+		private final String[] labels;
+		/**
+		 * Source of inputs for this wire.
+		 */
+		private @Nullable InputCursor input;
+
+		/**
+		 * Construct a new symbolic wire.
+		 *
+		 * @param labels Labels of the pin this wire is connected to.
+		 */
+		public SymbolicPullWire(String... labels) {
+			this.labels = labels;
+		}
+
+		/**
+		 * Bind this wire to a given source of inputs.
+		 *
+		 * @param input The source of inputs.
+		 */
+		void bind(InputCursor input) {
+			this.input = input;
+		}
+
+		@Override
+		public String[] getLabels() {
+			return this.labels;
+		}
+
+		@Override
+		public boolean hasLabel(String label) {
+			for (int i = 0; i != this.labels.length; ++i) {
+				if (this.labels[i].equals(label)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public boolean read() {
+			InputCursor in = this.input;
+			return in != null && in.next();
+		}
+
+		@Override
+		public boolean write(boolean value) {
+			return false;
+		}
+
+		@Override
+		public boolean isRising() {
+			return false;
+		}
+
+		@Override
+		public boolean clock() {
+			return false;
+		}
+
+		@Override
+		public void reset() {
+		}
+	}
+}
@@ -0,0 +1,958 @@
+package tinyboycov.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import javr.core.AVR;
+import javr.io.HexFile;
+import tinyboy.core.ControlPad;
+import tinyboy.core.TinyBoyInputSequence;
+import tinyboy.util.AutomatedTester;
+import tinyboycov.core.PackedInputSequence;
+
+/**
+ * Responsible for fuzz testing a given firmware image using inputs drawn from a
+ * given input generator. This follows the same approach as
+ * <code>AutomatedTester</code>, except that the machine state is checkpointed
+ * after each input prefix. Thus, an input which extends a previously executed
+ * input resumes from the corresponding checkpoint, rather than replaying the
+ * entire sequence from reset.
+ *
+ * @param <T> The type of input sequences being tested.
+ */
+public class FuzzTester<T extends Iterator<Boolean>> {
+	/**
+	 * Default number of checkpoints retained.
+	 */
+	public static final int CHECKPOINT_CAPACITY = 16384;
+	/**
+	 * Number of inputs read (i.e. one per button) for each step of a
+	 * <code>TinyBoyInputSequence</code>.
+	 */
+	private static final int NUM_BUTTONS = ControlPad.Button.values().length;
+	/**
+	 * Minimum time (in milliseconds) between progress reports.
+	 */
+	private static final long REPORT_INTERVAL = 1000;
+	/**
+	 * File to which metrics are periodically written during a run (as CSV, or
+	 * JSON if ending in <code>.json</code>), or <code>null</code> if none.
+	 */
+	public static @Nullable String METRICS_FILE = System.getProperty("tinyboycov.metrics"); //$NON-NLS-1$
+	/**
+	 * Time (in milliseconds) between metrics being written.
+	 */
+	public static long METRICS_INTERVAL = 1000;
+	/**
+	 * Default number of consecutive inputs which may be executed without covering
+	 * a new branch before the run is considered to have plateaued. Zero disables
+	 * plateau detection.
+	 */
+	public static long PLATEAU = Long.getLong("tinyboycov.plateau", 50_000).longValue(); //$NON-NLS-1$
+	/**
+	 * Determines whether the firmware is translated ahead-of-time into Java,
+	 * rather than every instruction being interpreted (see
+	 * <code>Translator</code>).
+	 */
+	public static boolean TRANSLATE = Boolean.getBoolean("tinyboycov.translate"); //$NON-NLS-1$
+	/**
+	 * Determines whether loops polling the buttons are fast-forwarded to the
+	 * next input change, rather than executed iteration by iteration (see
+	 * <code>FuzzEmulator.setFastForward()</code>).
+	 */
+	public static boolean FAST_FORWARD = Boolean.parseBoolean(System.getProperty("tinyboycov.fastforward", "true")); //$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * The emulators used by each of the worker threads.
+	 */
+	private final FuzzEmulator[] tinyBoys;
+	/**
+	 * The firmware being tested.
+	 */
+	private final HexFile firmware;
+	/**
+	 * The source of inputs to test.
+	 */
+	private final AutomatedTester.InputGenerator<T> generator;
+	/**
+	 * Number of worker threads to use.
+	 */
+	private final int nthreads;
+	/**
+	 * Pool in which worker threads run.
+	 */
+	private final ForkJoinPool pool;
+	/**
+	 * Window showing the display of the first worker's emulator, or
+	 * <code>null</code> if no GUI is enabled.
+	 */
+	private final @Nullable DisplayMirror mirror;
+	/**
+	 * Checkpoints shared between all worker threads, or <code>null</code> if
+	 * checkpointing is disabled.
+	 */
+	private final @Nullable CheckpointCache checkpoints;
+	/**
+	 * Metrics collected whilst testing.
+	 */
+	private final Metrics metrics = new Metrics();
+	/**
+	 * Number of consecutive inputs which may be executed without covering a new
+	 * branch, or zero if unlimited.
+	 */
+	private long plateau = PLATEAU;
+	/**
+	 * Timeline of coverage obtained during the last run, or <code>null</code> if
+	 * not yet run.
+	 */
+	private @Nullable CoverageTimeline timeline;
+
+	/**
+	 * Construct a new fuzz tester with checkpointing enabled.
+	 *
+	 * @param firmware  The firmware being tested.
+	 * @param generator The source of inputs to test.
+	 * @param gui       Flag to show Graphical User Interface.
+	 * @param nthreads  Number of threads to use.
+	 */
+	public FuzzTester(HexFile firmware, AutomatedTester.InputGenerator<T> generator, boolean gui, int nthreads) {
+		this(firmware, generator, gui, nthreads, true);
+	}
+
+	/**
+	 * Construct a new fuzz tester.
+	 *
+	 * @param firmware      The firmware being tested.
+	 * @param generator     The source of inputs to test.
+	 * @param gui           Flag to show Graphical User Interface.
+	 * @param nthreads      Number of threads to use.
+	 * @param checkpointing Flag to enable resuming inputs from checkpoints.
+	 */
+	public FuzzTester(HexFile firmware, AutomatedTester.InputGenerator<T> generator, boolean gui, int nthreads,
+			boolean checkpointing) {
+		this.firmware = firmware;
+		this.generator = generator;
+		this.tinyBoys = new FuzzEmulator[nthreads];
+		FirmwareImage image = null;
+		for (int i = 0; i != this.tinyBoys.length; ++i) {
+			FuzzEmulator tinyBoy = createTinyBoy();
+			if (image == null) {
+				// Flatten and decode the firmware once for all emulators.
+				image = new FirmwareImage(firmware, tinyBoy.getAVR().getCode().size());
+			}
+			tinyBoy.load(image);
+			tinyBoy.setTranslated(TRANSLATE);
+			tinyBoy.setFastForward(FAST_FORWARD);
+			this.tinyBoys[i] = tinyBoy;
+		}
+		// NOTE: workers always run headless, and the display of the first is
+		// mirrored off the worker's thread.
+		this.mirror = gui ? new DisplayMirror(this.tinyBoys[0], this.metrics, DisplayMirror.FRAME_RATE) : null;
+		this.nthreads = nthreads;
+		this.pool = new ForkJoinPool(nthreads);
+		this.checkpoints = checkpointing ? new CheckpointCache(CHECKPOINT_CAPACITY) : null;
+	}
+
+	/**
+	 * Destroy any graphical views associated with this tester, and shutdown the
+	 * worker threads.
+	 */
+	public void destroy() {
+		this.pool.shutdown();
+		DisplayMirror m = this.mirror;
+		if (m != null) {
+			m.destroy();
+		}
+	}
+
+	/**
+	 * Run the fuzz tester until either the target coverage is reached, the input
+	 * generator is exhausted or coverage plateaus. Each worker thread repeatedly
+	 * takes a single input from the generator, tests it and immediately records
+	 * the result. Thus, a worker which happens to be given a long-running input
+	 * does not hold up the others.
+	 *
+	 * @param target The target branch coverage (as a percentage).
+	 * @return The coverage obtained.
+	 * @throws InterruptedException If a worker thread is interrupted.
+	 * @throws ExecutionException   If a worker thread fails.
+	 * @throws IOException          If the metrics file cannot be written.
+	 */
+	public FirmwareAnalysis.Coverage run(double target)
+			throws InterruptedException, ExecutionException, IOException {
+		Session session = new Session(target, true);
+		Scheduler scheduler = session.scheduler;
+		String file = METRICS_FILE;
+		@Nullable Closeable writer = file == null ? null : this.metrics.writeTo(new File(file), METRICS_INTERVAL);
+		try {
+			System.err.println("Initialised " + this.nthreads + " worker threads."); //$NON-NLS-1$ //$NON-NLS-2$
+			ArrayList<ForkJoinTask<?>> workers = new ArrayList<>();
+			for (int i = 0; i != this.nthreads; ++i) {
+				FuzzEmulator tinyBoy = this.tinyBoys[i];
+				workers.add(this.pool.submit(() -> work(tinyBoy, scheduler)));
+			}
+			for (int i = 0; i != workers.size(); ++i) {
+				workers.get(i).get();
+			}
+			scheduler.report();
+		} finally {
+			if (writer != null) {
+				writer.close();
+			}
+		}
+		session.finish();
+		return session.coverage;
+	}
+
+	/**
+	 * Start a session which tests inputs only when asked to by the caller, rather
+	 * than using this tester's own worker threads. This allows the caller to
+	 * share its threads between several testers. A session finishes under the
+	 * same conditions as <code>run()</code>, or when stopped.
+	 *
+	 * @param target The target branch coverage (as a percentage).
+	 * @return The session.
+	 */
+	public Session start(double target) {
+		return new Session(target, false);
+	}
+
+	/**
+	 * Set the number of consecutive inputs which may be executed without covering
+	 * a new branch. Once exceeded, the generator is given the chance to change
+	 * strategy and, if it does not, the run is stopped.
+	 *
+	 * @param plateau Number of inputs, or zero if unlimited.
+	 */
+	public void setPlateau(long plateau) {
+		this.plateau = plateau;
+	}
+
+	/**
+	 * Get the timeline of coverage obtained during the last run.
+	 *
+	 * @return The timeline, or <code>null</code> if not yet run.
+	 */
+	public @Nullable CoverageTimeline getTimeline() {
+		return this.timeline;
+	}
+
+	/**
+	 * Get the metrics collected whilst testing.
+	 *
+	 * @return The metrics.
+	 */
+	public Metrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * The main loop of a worker thread, which tests inputs on a given emulator
+	 * until the scheduler indicates there are no more.
+	 *
+	 * @param tinyBoy   The emulator to use.
+	 * @param scheduler The scheduler handing out inputs.
+	 * @return Nothing.
+	 * @throws InterruptedException If the worker is interrupted.
+	 */
+	private @Nullable Void work(FuzzEmulator tinyBoy, Scheduler scheduler) throws InterruptedException {
+		try {
+			T input;
+			while ((input = scheduler.take()) != null) {
+				scheduler.complete(input, fuzzTest(tinyBoy, input));
+			}
+		} finally {
+			// Ensure other workers do not wait forever if this one fails.
+			scheduler.stop("failed"); //$NON-NLS-1$
+		}
+		return null;
+	}
+
+	/**
+	 * Fuzz test a single input on the first worker's emulator, bypassing the
+	 * generator altogether. This is useful for measuring the cost of executing an
+	 * input in isolation.
+	 *
+	 * @param input The input to test.
+	 * @return The result of testing the input.
+	 */
+	public Result fuzzTest(T input) {
+		return fuzzTest(this.tinyBoys[0], input);
+	}
+
+	/**
+	 * Fuzz test a single input on a given emulator. Where possible, this resumes
+	 * from the checkpoint of the prefix the input shares with the sequence it was
+	 * derived from. Likewise, a checkpoint is taken for the input itself so that
+	 * any mutants of it can be resumed.
+	 *
+	 * @param tinyBoy The emulator to use.
+	 * @param input   The input to test.
+	 * @return The result of testing the input.
+	 */
+	private Result fuzzTest(FuzzEmulator tinyBoy, T input) {
+		long start = System.nanoTime();
+		CheckpointCache cache = this.checkpoints;
+		String key = null;
+		FuzzEmulator.Snapshot snapshot = null;
+		if (cache != null && (input instanceof PackedInputSequence || input instanceof TinyBoyInputSequence)) {
+			// NOTE: each step in the sequence is rendered as exactly one character.
+			key = input.toString();
+			// Resume from the prefix shared with the sequence this was derived from
+			// (if known) or, otherwise, from all but the final step.
+			int n = key.length() - 1;
+			if (input instanceof PackedInputSequence && ((PackedInputSequence) input).getShared() > 0) {
+				n = Math.min(n, ((PackedInputSequence) input).getShared());
+			}
+			snapshot = n > 0 ? cache.get(key.substring(0, n)) : null;
+			if (snapshot != null && !tinyBoy.canRestore(snapshot)) {
+				snapshot = null;
+			}
+		}
+		int offset = 0;
+		if (snapshot != null) {
+			tinyBoy.restore(snapshot);
+			offset = snapshot.getReads();
+			// Skip those inputs already consumed by the prefix
+			if (input instanceof BooleanIterator) {
+				((BooleanIterator) input).skip(offset);
+			} else {
+				for (int i = 0; i != offset; ++i) {
+					input.next();
+				}
+			}
+		} else {
+			tinyBoy.reset();
+		}
+		tinyBoy.bind(input, offset);
+		// Determine point at which to checkpoint (i.e. just before the final step)
+		int checkpoint = key != null ? key.length() * NUM_BUTTONS : -1;
+		long cycles = tinyBoy.getCycles();
+		try {
+			while (input.hasNext()) {
+				if (tinyBoy.getReads() == checkpoint && cache != null && key != null) {
+					cache.put(key, tinyBoy.snapshot());
+					checkpoint = -1;
+				}
+				tinyBoy.clock();
+			}
+		} catch (AVR.HaltedException e) {
+			// Machine halted, so input sequence finished early.
+		}
+		Result result = new Result(tinyBoy.getCoverage().toBitSet(), tinyBoy.getEdges().toCoverage(),
+				tinyBoy.getStateView());
+		this.metrics.executed(System.nanoTime() - start, tinyBoy.getCycles() - cycles);
+		return result;
+	}
+
+	/**
+	 * Construct a headless TinyBoy emulator whose buttons are driven
+	 * symbolically.
+	 *
+	 * @return The emulator.
+	 */
+	private static FuzzEmulator createTinyBoy() {
+		FuzzEmulator.SymbolicPullWire[] wires = new FuzzEmulator.SymbolicPullWire[4];
+		wires[ControlPad.Button.UP.ordinal()] = new FuzzEmulator.SymbolicPullWire("PB1", "MISO", "DO", "AIN1", "OC0B", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+				"OC1A", "PCINT1"); //$NON-NLS-1$ //$NON-NLS-2$
+		wires[ControlPad.Button.DOWN.ordinal()] = new FuzzEmulator.SymbolicPullWire("PB3", "PCINT3", "XTAL1", "CLK1", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				"!OC1B", "ADC3"); //$NON-NLS-1$ //$NON-NLS-2$
+		wires[ControlPad.Button.LEFT.ordinal()] = new FuzzEmulator.SymbolicPullWire("PB4", "PCINT4", "XTAL2", "CLK0", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				"OC1B", "ADC2"); //$NON-NLS-1$ //$NON-NLS-2$
+		wires[ControlPad.Button.RIGHT.ordinal()] = new FuzzEmulator.SymbolicPullWire("PB5", "PCINT5", "!RESET", "ADC0", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				"dW"); //$NON-NLS-1$
+		return new FuzzEmulator(wires);
+	}
+
+	/**
+	 * A single run of this tester, where inputs are tested by whichever threads
+	 * call <code>step()</code>. Each thread must identify itself with a distinct
+	 * worker index (less than the number of threads this tester was constructed
+	 * with), such that no emulator is used by two threads at once.
+	 */
+	public final class Session {
+		/**
+		 * Coverage obtained so far.
+		 */
+		final FirmwareAnalysis.Coverage coverage;
+		/**
+		 * Timeline into which coverage progress is recorded.
+		 */
+		private final CoverageTimeline line;
+		/**
+		 * The scheduler handing out inputs.
+		 */
+		final Scheduler scheduler;
+
+		/**
+		 * Construct a new session.
+		 *
+		 * @param target  The target branch coverage (as a percentage).
+		 * @param verbose Flag to report progress periodically.
+		 */
+		Session(double target, boolean verbose) {
+			FuzzTester<T> self = FuzzTester.this;
+			this.coverage = FirmwareAnalysis.of(self.firmware).newCoverage();
+			this.line = new CoverageTimeline(this.coverage.getAnalysis().getBranchCount());
+			this.line.add(0, 0);
+			self.timeline = this.line;
+			Scheduler s = new Scheduler(this.coverage, this.line, target, verbose);
+			this.scheduler = s;
+			self.metrics.setCoverage(() -> s.getBranchCoverage());
+			if (self.generator instanceof InputGenerator) {
+				InputGenerator<T> g = (InputGenerator<T>) self.generator;
+				self.metrics.setCorpusSize(() -> g.getCorpusSize());
+			}
+		}
+
+		/**
+		 * Test at most one input on the emulator of a given worker. This never
+		 * blocks: if no input is available right now (e.g. because the generator is
+		 * waiting on results from other workers), then nothing is tested.
+		 *
+		 * @param worker Index of the worker.
+		 * @return True if an input was tested.
+		 */
+		public boolean step(int worker) {
+			T input = this.scheduler.poll();
+			if (input == null) {
+				return false;
+			}
+			try {
+				this.scheduler.complete(input, fuzzTest(FuzzTester.this.tinyBoys[worker], input));
+			} catch (RuntimeException | Error e) {
+				// Ensure other workers do not wait forever if this one fails.
+				this.scheduler.stop("failed"); //$NON-NLS-1$
+				throw e;
+			}
+			return true;
+		}
+
+		/**
+		 * Check whether this session is finished.
+		 *
+		 * @return True if no more inputs will be tested.
+		 */
+		public boolean isDone() {
+			return this.scheduler.isDone();
+		}
+
+		/**
+		 * Finish this session early.
+		 *
+		 * @param outcome Reason for stopping.
+		 */
+		public void stop(String outcome) {
+			this.scheduler.stop(outcome);
+		}
+
+		/**
+		 * Get the reason this session finished.
+		 *
+		 * @return The outcome (e.g. <code>"target"</code> or
+		 *         <code>"plateau"</code>), or <code>null</code> if not finished.
+		 */
+		public @Nullable String getOutcome() {
+			return this.scheduler.getOutcome();
+		}
+
+		/**
+		 * Get the branch coverage obtained so far.
+		 *
+		 * @return Branch coverage (as a percentage).
+		 */
+		public double getBranchCoverage() {
+			return this.scheduler.getBranchCoverage();
+		}
+
+		/**
+		 * Get the coverage obtained. This must only be called once the session is
+		 * finished.
+		 *
+		 * @return The coverage.
+		 */
+		public FirmwareAnalysis.Coverage getCoverage() {
+			return this.coverage;
+		}
+
+		/**
+		 * Record the final point on the coverage timeline. This should be called
+		 * once the session is finished.
+		 */
+		public void finish() {
+			this.line.add(FuzzTester.this.metrics.getInputs(), this.coverage.getCoveredBranches());
+		}
+	}
+
+	/**
+	 * Hands out inputs from the generator to worker threads one at a time, and
+	 * records their results as they complete. Since input generators are not
+	 * thread safe, all interaction with the generator happens whilst holding the
+	 * scheduler's lock.
+	 */
+	private final class Scheduler {
+		/**
+		 * Coverage obtained so far.
+		 */
+		private final FirmwareAnalysis.Coverage coverage;
+		/**
+		 * The set of reachable instructions, against which all coverage is
+		 * filtered.
+		 */
+		private final BitSet reachable;
+		/**
+		 * Coverage obtained so far, which workers merge into without locking.
+		 */
+		private final GlobalCoverage global;
+		/**
+		 * The target branch coverage (as a percentage).
+		 */
+		private final double target;
+		/**
+		 * Time at which the run started.
+		 */
+		private final long start = System.currentTimeMillis();
+		/**
+		 * Number of inputs handed out, but not yet completed.
+		 */
+		private int inflight;
+		/**
+		 * Number of inputs completed.
+		 */
+		private int count;
+		/**
+		 * Time at which progress was last reported.
+		 */
+		private long lastReport = this.start;
+		/**
+		 * Timeline into which coverage progress is recorded.
+		 */
+		private final CoverageTimeline timeline;
+		/**
+		 * Value of <code>count</code> when a new branch was last covered.
+		 */
+		private int lastProgress;
+		/**
+		 * Set once the run is finished.
+		 */
+		private boolean done;
+		/**
+		 * Reason the run finished, or <code>null</code> if not finished.
+		 */
+		private @Nullable String outcome;
+		/**
+		 * Flag to report progress periodically.
+		 */
+		private final boolean verbose;
+		/**
+		 * Branch coverage obtained so far (as a percentage), published such that it
+		 * can be read without locking.
+		 */
+		private volatile double branchCoverage;
+
+		/**
+		 * Construct a new scheduler.
+		 *
+		 * @param coverage The coverage to record results into.
+		 * @param timeline The timeline to record progress into.
+		 * @param target   The target branch coverage (as a percentage).
+		 * @param verbose  Flag to report progress periodically.
+		 */
+		public Scheduler(FirmwareAnalysis.Coverage coverage, CoverageTimeline timeline, double target,
+				boolean verbose) {
+			this.coverage = coverage;
+			this.timeline = timeline;
+			this.reachable = coverage.getAnalysis().getReachableInstructions();
+			this.global = new GlobalCoverage(this.reachable.length());
+			this.target = target;
+			this.verbose = verbose;
+			this.branchCoverage = coverage.getBranchCoverage();
+		}
+
+		/**
+		 * Take the next input to test, blocking if the generator has nothing to offer
+		 * until other workers have recorded their results.
+		 *
+		 * @return The next input, or <code>null</code> if the run is finished.
+		 * @throws InterruptedException If interrupted whilst waiting.
+		 */
+		public synchronized @Nullable T take() throws InterruptedException {
+			return next(true);
+		}
+
+		/**
+		 * Take the next input to test, if one is available right now.
+		 *
+		 * @return The next input, or <code>null</code> if either the run is finished
+		 *         or the generator has nothing to offer until other workers have
+		 *         recorded their results.
+		 */
+		public synchronized @Nullable T poll() {
+			try {
+				return next(false);
+			} catch (InterruptedException e) {
+				// Cannot happen, since never waits.
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Take the next input to test.
+		 *
+		 * @param block Flag to wait until an input becomes available.
+		 * @return The next input, or <code>null</code> if none.
+		 * @throws InterruptedException If interrupted whilst waiting.
+		 */
+		private @Nullable T next(boolean block) throws InterruptedException {
+			long waiting = System.nanoTime();
+			while (!this.done) {
+				if (this.coverage.getBranchCoverage() >= this.target) {
+					stop("target"); //$NON-NLS-1$
+				} else if (FuzzTester.this.generator.hasMore()) {
+					long now = System.nanoTime();
+					T input = FuzzTester.this.generator.generate();
+					long generated = System.nanoTime();
+					FuzzTester.this.metrics.generated(generated - now);
+					if (input != null) {
+						FuzzTester.this.metrics.dequeued(now - waiting, this.inflight);
+						this.inflight = this.inflight + 1;
+						return input;
+					}
+				} else if (this.inflight == 0) {
+					// Generator exhausted and nothing can replenish it.
+					stop("exhausted"); //$NON-NLS-1$
+				} else if (block) {
+					// Results still outstanding may replenish the generator.
+					wait();
+				} else {
+					return null;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Record the result of testing a given input. The result is first merged
+		 * into the global coverage map by the calling thread, without locking.
+		 * Only if it found something new (i.e. new coverage, or a final state not
+		 * seen before), or the generator is awaiting it, is it then passed to the
+		 * generator. Observe that generators which do not implement
+		 * <code>InputGenerator</code> are passed every result.
+		 *
+		 * @param input  The input tested.
+		 * @param result The result of testing it.
+		 */
+		public void complete(T input, Result result) {
+			BitSet code = result.getCodeExecuted();
+			code.and(this.reachable);
+			boolean fresh = this.global.merge(code);
+			boolean novel = this.global.merge(result.getEdges()) || fresh;
+			if (!novel && FuzzTester.this.generator instanceof InputGenerator) {
+				// NOTE: generators may retain inputs reaching a new state.
+				novel = this.global.add(result.getFingerprint());
+			}
+			completed(input, result, code, novel, fresh);
+		}
+
+		/**
+		 * Record the result of testing a given input, once merged into the global
+		 * coverage map.
+		 *
+		 * @param input  The input tested.
+		 * @param result The result of testing it.
+		 * @param code   The reachable instructions executed.
+		 * @param novel  Indicates whether anything new was found.
+		 * @param fresh  Indicates whether any new instructions were executed.
+		 */
+		private synchronized void completed(T input, Result result, BitSet code, boolean novel, boolean fresh) {
+			AutomatedTester.InputGenerator<T> g = FuzzTester.this.generator;
+			long now = System.nanoTime();
+			if (!(g instanceof InputGenerator)) {
+				g.record(input, code, result.getState());
+			} else if (novel || ((InputGenerator<T>) g).isAwaited(input)) {
+				((InputGenerator<T>) g).record(input, code, result.getEdges(), result.getStateView(),
+						result.getFingerprint());
+			} else {
+				((InputGenerator<T>) g).discard(input);
+			}
+			FuzzTester.this.metrics.recorded(System.nanoTime() - now);
+			int branches = this.coverage.getCoveredBranches();
+			if (fresh) {
+				double before = this.coverage.getInstructionCoverage();
+				this.coverage.record(code);
+				this.branchCoverage = this.coverage.getBranchCoverage();
+				if (this.coverage.getInstructionCoverage() != before) {
+					FuzzTester.this.metrics.covered();
+				}
+			}
+			this.inflight = this.inflight - 1;
+			this.count = this.count + 1;
+			if (this.coverage.getCoveredBranches() != branches) {
+				this.timeline.add(this.count, this.coverage.getCoveredBranches());
+				this.lastProgress = this.count;
+			} else if (FuzzTester.this.plateau > 0 && (this.count - this.lastProgress) >= FuzzTester.this.plateau) {
+				plateaued();
+			}
+			if (this.verbose && (System.currentTimeMillis() - this.lastReport) >= REPORT_INTERVAL) {
+				report();
+			}
+			notifyAll();
+		}
+
+		/**
+		 * Get the branch coverage obtained so far.
+		 *
+		 * @return Branch coverage (as a percentage).
+		 */
+		public double getBranchCoverage() {
+			return this.branchCoverage;
+		}
+
+		/**
+		 * Respond to coverage having plateaued. The generator is given the chance to
+		 * change strategy, otherwise the run is stopped.
+		 */
+		private void plateaued() {
+			AutomatedTester.InputGenerator<T> g = FuzzTester.this.generator;
+			if (g instanceof InputGenerator && ((InputGenerator<T>) g).plateaued()) {
+				if (this.verbose) {
+					System.err.println("Coverage plateaued after " + this.count + " inputs, switching strategy."); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				this.lastProgress = this.count;
+			} else {
+				if (this.verbose) {
+					System.err.println("Coverage plateaued after " + this.count + " inputs, stopping."); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				stop("plateau"); //$NON-NLS-1$
+			}
+		}
+
+		/**
+		 * Check whether the run is finished.
+		 *
+		 * @return True if finished.
+		 */
+		public synchronized boolean isDone() {
+			return this.done;
+		}
+
+		/**
+		 * Get the reason the run finished.
+		 *
+		 * @return The reason, or <code>null</code> if not finished.
+		 */
+		public synchronized @Nullable String getOutcome() {
+			return this.outcome;
+		}
+
+		/**
+		 * Finish the run, releasing any workers waiting for input.
+		 *
+		 * @param reason Reason for finishing, which is retained only if the run was
+		 *               not already finished.
+		 */
+		public synchronized void stop(String reason) {
+			if (!this.done) {
+				this.outcome = reason;
+			}
+			this.done = true;
+			notifyAll();
+		}
+
+		/**
+		 * Report progress made so far.
+		 */
+		public synchronized void report() {
+			long now = System.currentTimeMillis();
+			double rate = Math.round((this.count / (double) Math.max(1, now - this.start)) * 10000) / 10.0;
+			System.err.println("Processed " + this.count + " inputs @ " + rate + " inputs/s with coverage " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					+ Math.round(this.coverage.getBranchCoverage()) + "%"); //$NON-NLS-1$
+			this.lastReport = now;
+		}
+	}
+
+	/**
+	 * An input generator which, in addition to the instructions executed, can
+	 * make use of the edges executed by each input.
+	 *
+	 * @param <T> The type of input sequences being generated.
+	 */
+	public interface InputGenerator<T extends Iterator<Boolean>> extends AutomatedTester.InputGenerator<T> {
+		/**
+		 * Record the coverage and final state obtained for a given input.
+		 *
+		 * @param input    The input tested.
+		 * @param coverage The instructions executed.
+		 * @param edges    The edges executed, along with their hit count buckets.
+		 * @param state    The final state of data memory.
+		 */
+		public default void record(T input, BitSet coverage, EdgeCoverage edges, byte[] state) {
+			record(input, coverage, state);
+		}
+
+		/**
+		 * Record the coverage and final state obtained for a given input, where the
+		 * final state is given as a view of the emulator's memory. This avoids
+		 * copying the state when it need not be retained. The view is only valid
+		 * for the duration of this call.
+		 *
+		 * @param input    The input tested.
+		 * @param coverage The instructions executed.
+		 * @param edges    The edges executed, along with their hit count buckets.
+		 * @param state    The final state of data memory.
+		 */
+		public default void record(T input, BitSet coverage, EdgeCoverage edges, MemoryView state) {
+			record(input, coverage, edges, state.toByteArray());
+		}
+
+		/**
+		 * Record the coverage and final state obtained for a given input, along
+		 * with the fingerprint of that run. This avoids hashing the final state
+		 * again when it was already fingerprinted by the caller.
+		 *
+		 * @param input       The input tested.
+		 * @param coverage    The instructions executed.
+		 * @param edges       The edges executed, along with their hit count buckets.
+		 * @param state       The final state of data memory.
+		 * @param fingerprint The fingerprint of the run (see
+		 *                    <code>StateHash.fingerprint()</code>).
+		 */
+		public default void record(T input, BitSet coverage, EdgeCoverage edges, MemoryView state, long fingerprint) {
+			record(input, coverage, edges, state);
+		}
+
+		/**
+		 * Signal that a given input was tested, but found nothing new (i.e. neither
+		 * new coverage nor a final state not seen before). Such inputs are not
+		 * recorded, since they could not be retained.
+		 *
+		 * @param input The input tested.
+		 */
+		public default void discard(T input) {
+		}
+
+		/**
+		 * Determine whether the result of a given input must be recorded even if
+		 * it found nothing new. For example, the generator may be waiting on it to
+		 * decide what to generate next.
+		 *
+		 * @param input The input tested.
+		 * @return True if the input must be recorded.
+		 */
+		public default boolean isAwaited(T input) {
+			return false;
+		}
+
+		/**
+		 * Get the number of inputs currently held in this generator's corpus. This
+		 * may be called from any thread, and is used only for reporting.
+		 *
+		 * @return Size of the corpus, or <code>-1</code> if not applicable.
+		 */
+		public default int getCorpusSize() {
+			return -1;
+		}
+
+		/**
+		 * Signal that no new branch has been covered for some time. The generator
+		 * may respond by changing its strategy, in which case the run continues.
+		 *
+		 * @return True if the strategy was changed, false if the run should stop.
+		 */
+		public default boolean plateaued() {
+			return false;
+		}
+	}
+
+	/**
+	 * The result of testing a single input, including the edges executed. The
+	 * final state is held as a view of the emulator's memory, rather than a copy,
+	 * and is therefore only valid until that emulator tests another input.
+	 */
+	public static class Result extends AutomatedTester.Result {
+		/**
+		 * Placeholder state given to the superclass, since that is never used.
+		 */
+		private static final byte[] NO_STATE = new byte[0];
+		/**
+		 * The edges executed.
+		 */
+		private final EdgeCoverage edges;
+		/**
+		 * The final state of data memory.
+		 */
+		private final MemoryView state;
+		/**
+		 * The fingerprint of this run, once computed.
+		 */
+		private long fingerprint;
+		/**
+		 * Indicates whether the fingerprint has been computed.
+		 */
+		private boolean fingerprinted;
+
+		/**
+		 * Construct a new result.
+		 *
+		 * @param code  The instructions executed.
+		 * @param edges The edges executed.
+		 * @param state The final state of data memory.
+		 */
+		public Result(BitSet code, EdgeCoverage edges, MemoryView state) {
+			super(code, NO_STATE);
+			this.edges = edges;
+			this.state = state;
+		}
+
+		/**
+		 * Get a copy of the final state of data memory.
+		 *
+		 * @return Copy of data memory.
+		 */
+		@Override
+		public byte[] getState() {
+			return this.state.toByteArray();
+		}
+
+		/**
+		 * Get a view of the final state of data memory.
+		 *
+		 * @return View of data memory.
+		 */
+		public MemoryView getStateView() {
+			return this.state;
+		}
+
+		/**
+		 * Get the edges executed.
+		 *
+		 * @return The edge coverage.
+		 */
+		public EdgeCoverage getEdges() {
+			return this.edges;
+		}
+
+		/**
+		 * Get the 64-bit fingerprint of the final state and instructions executed.
+		 * This is computed at most once, on first use, and so reflects any changes
+		 * made to the instructions executed before then.
+		 *
+		 * @return The fingerprint.
+		 */
+		public long getFingerprint() {
+			if (!this.fingerprinted) {
+				this.fingerprint = StateHash.fingerprint(this.state, getCodeExecuted());
+				this.fingerprinted = true;
+			}
+			return this.fingerprint;
+		}
+	}
+}
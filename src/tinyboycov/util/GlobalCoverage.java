@@ -0,0 +1,109 @@
+package tinyboycov.util;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The union of the coverage obtained by every input tested so far, into which
+ * worker threads merge their results concurrently. Instructions and edges are
+ * held as bitmaps which are updated without locking, whilst the fingerprints of
+ * final states seen are held in a set split into stripes, each with its own
+ * lock. Thus, a worker learns straight away whether its input found anything
+ * new, without waiting on other workers. Since a bit is only ever claimed once,
+ * each new bit is reported by exactly one worker.
+ */
+public final class GlobalCoverage {
+	/**
+	 * Number of stripes in the set of state fingerprints (a power of two).
+	 */
+	private static final int STRIPES = 16;
+	/**
+	 * Instructions executed, with one bit per address (as for the coverage
+	 * recorded by the emulator).
+	 */
+	private final AtomicLongArray code;
+	/**
+	 * Edges executed, with eight bits (i.e. one per hit count bucket) per entry
+	 * of the edge map.
+	 */
+	private final AtomicLongArray edges = new AtomicLongArray(EdgeMap.MAP_SIZE / 8);
+	/**
+	 * Fingerprints of final states seen, where each stripe guards itself.
+	 */
+	private final LongHashSet[] states = new LongHashSet[STRIPES];
+
+	/**
+	 * Construct an empty coverage map. Only addresses below the given limit can
+	 * be merged into it.
+	 *
+	 * @param limit One past the highest reachable address (i.e. the length of
+	 *              the set of reachable instructions).
+	 */
+	public GlobalCoverage(int limit) {
+		this.code = new AtomicLongArray((limit + 63) >>> 6);
+		for (int i = 0; i != STRIPES; ++i) {
+			this.states[i] = new LongHashSet();
+		}
+	}
+
+	/**
+	 * Merge a set of instructions executed into this map.
+	 *
+	 * @param executed The instructions executed.
+	 * @return True if any had not been executed before.
+	 */
+	public boolean merge(BitSet executed) {
+		long[] words = executed.toLongArray();
+		boolean fresh = false;
+		for (int i = 0; i != words.length; ++i) {
+			fresh |= merge(this.code, i, words[i]);
+		}
+		return fresh;
+	}
+
+	/**
+	 * Merge a set of edges executed into this map.
+	 *
+	 * @param executed The edges executed, along with their hit count buckets.
+	 * @return True if any edge (or hit count bucket) had not been seen before.
+	 */
+	public boolean merge(EdgeCoverage executed) {
+		boolean fresh = false;
+		for (int i = 0; i != executed.size(); ++i) {
+			int index = executed.getIndex(i);
+			long bits = (executed.getBucket(i) & 0xFFL) << ((index & 7) << 3);
+			fresh |= merge(this.edges, index >>> 3, bits);
+		}
+		return fresh;
+	}
+
+	/**
+	 * Add the fingerprint of a final state to this map.
+	 *
+	 * @param fingerprint The fingerprint.
+	 * @return True if not seen before.
+	 */
+	public boolean add(long fingerprint) {
+		LongHashSet stripe = this.states[(int) (fingerprint >>> 60) & (STRIPES - 1)];
+		synchronized (stripe) {
+			return stripe.add(fingerprint);
+		}
+	}
+
+	/**
+	 * Set given bits of a word in a bitmap. The word is read first, since the
+	 * bits are almost always already set and, hence, no update is needed.
+	 *
+	 * @param map   The bitmap.
+	 * @param index Index of the word.
+	 * @param bits  The bits to set.
+	 * @return True if any were not already set.
+	 */
+	private static boolean merge(AtomicLongArray map, int index, long bits) {
+		if (bits == 0 || (map.get(index) & bits) == bits) {
+			return false;
+		}
+		long old = map.getAndAccumulate(index, bits, (a, b) -> a | b);
+		return (old & bits) != bits;
+	}
+}
@@ -0,0 +1,138 @@
+package tinyboycov.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative values, using log-linear buckets in
+ * the style of HdrHistogram. Values below <code>SUB_BUCKETS</code> are counted
+ * exactly, whilst each power of two above that is split into
+ * <code>SUB_BUCKETS</code> equal buckets. Hence, the relative error of any
+ * percentile is bounded (at around 6%) regardless of magnitude, and the
+ * histogram has a fixed size. Values can be recorded from any number of
+ * threads without locking.
+ */
+public final class Histogram {
+	/**
+	 * Number of bits used to identify a sub-bucket.
+	 */
+	private static final int SUB_BITS = 4;
+	/**
+	 * Number of buckets for each power of two.
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	/**
+	 * The count for each bucket.
+	 */
+	private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+	/**
+	 * Number of values recorded.
+	 */
+	private final LongAdder count = new LongAdder();
+	/**
+	 * Sum of all values recorded.
+	 */
+	private final LongAdder sum = new LongAdder();
+	/**
+	 * Largest value recorded.
+	 */
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Record a given value. Negative values are treated as zero.
+	 *
+	 * @param value The value to record.
+	 */
+	public void record(long value) {
+		long v = Math.max(0, value);
+		this.counts.incrementAndGet(index(v));
+		this.count.increment();
+		this.sum.add(v);
+		this.max.accumulate(v);
+	}
+
+	/**
+	 * Get the number of values recorded.
+	 *
+	 * @return Number of values.
+	 */
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	/**
+	 * Get the mean of all values recorded.
+	 *
+	 * @return The mean, or zero if nothing recorded.
+	 */
+	public double getMean() {
+		long n = this.count.sum();
+		return n == 0 ? 0 : this.sum.sum() / (double) n;
+	}
+
+	/**
+	 * Get the largest value recorded.
+	 *
+	 * @return The maximum, or zero if nothing recorded.
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * Get (an approximation of) a given percentile of the values recorded. This
+	 * is the upper bound of the bucket containing that percentile.
+	 *
+	 * @param percentile The percentile (between 0 and 100).
+	 * @return The value at that percentile, or zero if nothing recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long n = 0;
+		long[] snapshot = new long[this.counts.length()];
+		for (int i = 0; i != snapshot.length; ++i) {
+			snapshot[i] = this.counts.get(i);
+			n += snapshot[i];
+		}
+		long threshold = Math.max(1, (long) Math.ceil((percentile / 100.0) * n));
+		long seen = 0;
+		for (int i = 0; i != snapshot.length; ++i) {
+			seen += snapshot[i];
+			if (seen >= threshold) {
+				return Math.min(upperBound(i), getMax());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Determine the bucket for a given value.
+	 *
+	 * @param v The (non-negative) value.
+	 * @return The bucket index.
+	 */
+	private static int index(long v) {
+		if (v < SUB_BUCKETS) {
+			return (int) v;
+		}
+		int magnitude = 63 - Long.numberOfLeadingZeros(v);
+		int sub = (int) (v >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return ((magnitude - SUB_BITS + 1) * SUB_BUCKETS) + sub;
+	}
+
+	/**
+	 * Determine the largest value which falls into a given bucket.
+	 *
+	 * @param index The bucket index.
+	 * @return The largest value in that bucket.
+	 */
+	private static long upperBound(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int magnitude = (index / SUB_BUCKETS) + SUB_BITS - 1;
+		long sub = index % SUB_BUCKETS;
+		long lower = (1L << magnitude) | (sub << (magnitude - SUB_BITS));
+		return lower + (1L << (magnitude - SUB_BITS)) - 1;
+	}
+}
@@ -0,0 +1,108 @@
+package tinyboycov.util;
+
+/**
+ * A set of primitive longs implemented using open addressing with linear
+ * probing. This avoids the boxing and per-entry allocation of a
+ * <code>HashSet&lt;Long&gt;</code>, which matters when tracking millions of
+ * fingerprints. Elements are assumed to be well distributed already (e.g.
+ * hashes), and cannot be removed.
+ */
+public final class LongHashSet {
+	/**
+	 * The slots of the table, where zero indicates an empty slot.
+	 */
+	private long[] table;
+	/**
+	 * Indicates whether zero itself is in the set (since it cannot be stored in
+	 * the table).
+	 */
+	private boolean containsZero;
+	/**
+	 * Number of elements in the table.
+	 */
+	private int size;
+
+	/**
+	 * Construct an empty set.
+	 */
+	public LongHashSet() {
+		this.table = new long[1024];
+	}
+
+	/**
+	 * Add a given element to this set.
+	 *
+	 * @param value The element to add.
+	 * @return True if the element was not already present, false otherwise.
+	 */
+	public boolean add(long value) {
+		if (value == 0) {
+			boolean added = !this.containsZero;
+			this.containsZero = true;
+			return added;
+		}
+		int mask = this.table.length - 1;
+		for (int i = (int) value & mask;; i = (i + 1) & mask) {
+			long v = this.table[i];
+			if (v == value) {
+				return false;
+			} else if (v == 0) {
+				this.table[i] = value;
+				this.size = this.size + 1;
+				if ((this.size * 2) > this.table.length) {
+					resize();
+				}
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Check whether a given element is in this set.
+	 *
+	 * @param value The element to check.
+	 * @return True if it is present, false otherwise.
+	 */
+	public boolean contains(long value) {
+		if (value == 0) {
+			return this.containsZero;
+		}
+		int mask = this.table.length - 1;
+		for (int i = (int) value & mask;; i = (i + 1) & mask) {
+			long v = this.table[i];
+			if (v == value) {
+				return true;
+			} else if (v == 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Get the number of elements in this set.
+	 *
+	 * @return Number of elements.
+	 */
+	public int size() {
+		return this.size + (this.containsZero ? 1 : 0);
+	}
+
+	/**
+	 * Double the size of the table.
+	 */
+	private void resize() {
+		long[] old = this.table;
+		this.table = new long[old.length * 2];
+		int mask = this.table.length - 1;
+		for (int j = 0; j != old.length; ++j) {
+			long value = old[j];
+			if (value != 0) {
+				int i = (int) value & mask;
+				while (this.table[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				this.table[i] = value;
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package tinyboycov.util;
+
+/**
+ * A read-only view of data memory, made up of one or more consecutive banks.
+ * The banks are not copied. Hence, a view over the memory of a running machine
+ * changes as that machine executes, and should only be examined whilst the
+ * machine is stopped.
+ */
+public final class MemoryView {
+	/**
+	 * The banks of memory, in address order.
+	 */
+	private final byte[][] banks;
+	/**
+	 * Total number of bytes across all banks.
+	 */
+	private final int size;
+
+	/**
+	 * Construct a view over a given sequence of banks.
+	 *
+	 * @param banks The banks of memory, in address order.
+	 */
+	public MemoryView(byte[]... banks) {
+		this.banks = banks;
+		int n = 0;
+		for (int i = 0; i != banks.length; ++i) {
+			n += banks[i].length;
+		}
+		this.size = n;
+	}
+
+	/**
+	 * Get the number of bytes in this view.
+	 *
+	 * @return Number of bytes.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Read the byte at a given address.
+	 *
+	 * @param address The address to read.
+	 * @return The byte at that address.
+	 */
+	public byte get(int address) {
+		int a = address;
+		for (int i = 0; i != this.banks.length; ++i) {
+			byte[] bank = this.banks[i];
+			if (a < bank.length) {
+				return bank[a];
+			}
+			a -= bank.length;
+		}
+		throw new IndexOutOfBoundsException(address);
+	}
+
+	/**
+	 * Copy this view into a single array.
+	 *
+	 * @return Copy of the memory.
+	 */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[this.size];
+		int offset = 0;
+		for (int i = 0; i != this.banks.length; ++i) {
+			byte[] bank = this.banks[i];
+			System.arraycopy(bank, 0, bytes, offset, bank.length);
+			offset += bank.length;
+		}
+		return bytes;
+	}
+}
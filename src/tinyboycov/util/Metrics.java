@@ -0,0 +1,281 @@
+package tinyboycov.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects metrics about a fuzzing run, such that it can be determined where
+ * the time goes (e.g. the emulator, the generator or waiting for work). All
+ * metrics can be updated concurrently from any thread without locking. A
+ * snapshot of the metrics can be written periodically to a file, as either CSV
+ * or JSON (one object per line) depending on the file's extension.
+ */
+public final class Metrics {
+	/**
+	 * Column names, in the order they are written.
+	 */
+	private static final String[] COLUMNS = { "time_ms", "inputs", "inputs_per_s", "branch_coverage", "corpus_size", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			"new_coverage", "cycles", "exec_us_p50", "exec_us_p99", "exec_us_max", "cycles_p50", "cycles_p99", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+			"generate_us_p50", "generate_us_p99", "record_us_p50", "record_us_p99", "wait_us_p50", "wait_us_p99", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+			"queue_depth_p50", "queue_depth_max" }; //$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * Time at which collection started.
+	 */
+	private final long start = System.nanoTime();
+	/**
+	 * Number of inputs executed.
+	 */
+	private final LongAdder inputs = new LongAdder();
+	/**
+	 * Number of machine cycles executed.
+	 */
+	private final LongAdder cycles = new LongAdder();
+	/**
+	 * Number of inputs which obtained new coverage.
+	 */
+	private final LongAdder newCoverage = new LongAdder();
+	/**
+	 * Time taken to execute each input (in nanoseconds).
+	 */
+	private final Histogram execTime = new Histogram();
+	/**
+	 * Number of cycles executed for each input.
+	 */
+	private final Histogram cyclesPerInput = new Histogram();
+	/**
+	 * Time taken by each call to generate an input (in nanoseconds).
+	 */
+	private final Histogram generateTime = new Histogram();
+	/**
+	 * Time taken by each call to record a result (in nanoseconds).
+	 */
+	private final Histogram recordTime = new Histogram();
+	/**
+	 * Time workers spent waiting for each input (in nanoseconds).
+	 */
+	private final Histogram waitTime = new Histogram();
+	/**
+	 * Number of inputs in flight whenever one is handed out.
+	 */
+	private final Histogram queueDepth = new Histogram();
+	/**
+	 * Provides the current branch coverage (as a percentage).
+	 */
+	private volatile DoubleSupplier coverage = () -> 0;
+	/**
+	 * Provides the current corpus size (or <code>-1</code> if unknown).
+	 */
+	private volatile LongSupplier corpusSize = () -> -1;
+
+	/**
+	 * Record that an input was executed.
+	 *
+	 * @param nanos  Time taken to execute it.
+	 * @param cycles Number of cycles executed.
+	 */
+	public void executed(long nanos, long cycles) {
+		this.inputs.increment();
+		this.cycles.add(cycles);
+		this.execTime.record(nanos);
+		this.cyclesPerInput.record(cycles);
+	}
+
+	/**
+	 * Record the time taken to generate an input.
+	 *
+	 * @param nanos Time taken.
+	 */
+	public void generated(long nanos) {
+		this.generateTime.record(nanos);
+	}
+
+	/**
+	 * Record the time taken to record a result with the generator.
+	 *
+	 * @param nanos Time taken.
+	 */
+	public void recorded(long nanos) {
+		this.recordTime.record(nanos);
+	}
+
+	/**
+	 * Record the time a worker waited to be handed an input, and the number of
+	 * inputs in flight at that point.
+	 *
+	 * @param nanos Time waited.
+	 * @param depth Number of inputs in flight.
+	 */
+	public void dequeued(long nanos, int depth) {
+		this.waitTime.record(nanos);
+		this.queueDepth.record(depth);
+	}
+
+	/**
+	 * Record that an input obtained new coverage.
+	 */
+	public void covered() {
+		this.newCoverage.increment();
+	}
+
+	/**
+	 * Set the source of the current branch coverage.
+	 *
+	 * @param coverage Provides branch coverage (as a percentage).
+	 */
+	public void setCoverage(DoubleSupplier coverage) {
+		this.coverage = coverage;
+	}
+
+	/**
+	 * Set the source of the current corpus size.
+	 *
+	 * @param corpusSize Provides the corpus size.
+	 */
+	public void setCorpusSize(LongSupplier corpusSize) {
+		this.corpusSize = corpusSize;
+	}
+
+	/**
+	 * Get the number of inputs executed.
+	 *
+	 * @return Number of inputs.
+	 */
+	public long getInputs() {
+		return this.inputs.sum();
+	}
+
+	/**
+	 * Get the current branch coverage.
+	 *
+	 * @return Branch coverage (as a percentage).
+	 */
+	public double getBranchCoverage() {
+		return this.coverage.getAsDouble();
+	}
+
+	/**
+	 * Get the histogram of execution times (in nanoseconds).
+	 *
+	 * @return The histogram.
+	 */
+	public Histogram getExecTime() {
+		return this.execTime;
+	}
+
+	/**
+	 * Start writing the metrics periodically to a given file, replacing its
+	 * existing contents. If the file name ends in <code>.json</code> then each
+	 * snapshot is written as a JSON object on its own line, otherwise as a CSV row
+	 * (following a header row). A final snapshot is written when the returned
+	 * writer is closed.
+	 *
+	 * @param file   The file to write to.
+	 * @param period Time (in milliseconds) between snapshots.
+	 * @return The writer, which must be closed when the run is finished.
+	 * @throws IOException If the file cannot be opened.
+	 */
+	public Closeable writeTo(File file, long period) throws IOException {
+		boolean json = file.getName().endsWith(".json"); //$NON-NLS-1$
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		if (!json) {
+			out.println(String.join(",", COLUMNS)); //$NON-NLS-1$
+		}
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "metrics"); //$NON-NLS-1$
+			t.setDaemon(true);
+			return t;
+		});
+		Runnable snapshot = () -> {
+			synchronized (out) {
+				out.println(json ? toJson() : toCsv());
+				out.flush();
+			}
+		};
+		timer.scheduleAtFixedRate(snapshot, period, period, TimeUnit.MILLISECONDS);
+		return () -> {
+			timer.shutdownNow();
+			snapshot.run();
+			out.close();
+			if (out.checkError()) {
+				throw new UncheckedIOException(new IOException("error writing " + file)); //$NON-NLS-1$
+			}
+		};
+	}
+
+	/**
+	 * Take a snapshot of the metrics as a CSV row.
+	 *
+	 * @return The row (without line terminator).
+	 */
+	public String toCsv() {
+		return String.join(",", values()); //$NON-NLS-1$
+	}
+
+	/**
+	 * Take a snapshot of the metrics as a JSON object.
+	 *
+	 * @return The object (on a single line).
+	 */
+	public String toJson() {
+		String[] values = values();
+		StringBuilder b = new StringBuilder("{"); //$NON-NLS-1$
+		for (int i = 0; i != COLUMNS.length; ++i) {
+			if (i != 0) {
+				b.append(',');
+			}
+			b.append('"').append(COLUMNS[i]).append("\":").append(values[i]); //$NON-NLS-1$
+		}
+		return b.append('}').toString();
+	}
+
+	/**
+	 * Take a snapshot of the metrics, corresponding to <code>COLUMNS</code>.
+	 *
+	 * @return The value of each column.
+	 */
+	private String[] values() {
+		long elapsed = Math.max(1, (System.nanoTime() - this.start) / 1_000_000);
+		long n = this.inputs.sum();
+		return new String[] { Long.toString(elapsed), Long.toString(n), format((n * 1000.0) / elapsed),
+				format(this.coverage.getAsDouble()), Long.toString(this.corpusSize.getAsLong()),
+				Long.toString(this.newCoverage.sum()), Long.toString(this.cycles.sum()),
+				micros(this.execTime.getPercentile(50)), micros(this.execTime.getPercentile(99)),
+				micros(this.execTime.getMax()), Long.toString(this.cyclesPerInput.getPercentile(50)),
+				Long.toString(this.cyclesPerInput.getPercentile(99)), micros(this.generateTime.getPercentile(50)),
+				micros(this.generateTime.getPercentile(99)), micros(this.recordTime.getPercentile(50)),
+				micros(this.recordTime.getPercentile(99)), micros(this.waitTime.getPercentile(50)),
+				micros(this.waitTime.getPercentile(99)), Long.toString(this.queueDepth.getPercentile(50)),
+				Long.toString(this.queueDepth.getMax()) };
+	}
+
+	/**
+	 * Format a duration in nanoseconds as microseconds.
+	 *
+	 * @param nanos The duration.
+	 * @return The formatted duration.
+	 */
+	private static String micros(long nanos) {
+		return format(nanos / 1000.0);
+	}
+
+	/**
+	 * Format a number to (at most) one decimal place.
+	 *
+	 * @param value The number to format.
+	 * @return The formatted number.
+	 */
+	private static String format(double value) {
+		return Double.isFinite(value) ? String.format(Locale.ROOT, "%.1f", Double.valueOf(value)) : "0"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,124 @@
+package tinyboycov.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Captures the output of a child process into a bounded ring buffer. Once the
+ * buffer is full, the oldest bytes are discarded to make room and, hence, only
+ * the most recent output is retained. Optionally, all output can also be
+ * forwarded (as it arrives) to another stream, such that nothing is lost even
+ * when the buffer overflows.
+ */
+public final class OutputCapture extends OutputStream {
+	/**
+	 * The ring buffer itself.
+	 */
+	private final byte[] buffer;
+	/**
+	 * Stream to which output is forwarded (if any).
+	 */
+	private final @Nullable OutputStream forward;
+	/**
+	 * Total number of bytes written.
+	 */
+	private long written;
+
+	/**
+	 * Construct a new capture.
+	 *
+	 * @param capacity Maximum number of bytes retained.
+	 * @param forward  Stream to which output is forwarded, or <code>null</code>
+	 *                 if none.
+	 */
+	public OutputCapture(int capacity, @Nullable OutputStream forward) {
+		this.buffer = new byte[capacity];
+		this.forward = forward;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+		OutputStream f = this.forward;
+		if (f != null) {
+			f.write(bytes, offset, length);
+			f.flush();
+		}
+		int n = this.buffer.length;
+		// Only the last n bytes can survive
+		int skip = Math.max(0, length - n);
+		int pos = (int) ((this.written + skip) % n);
+		for (int i = skip; i < length;) {
+			int chunk = Math.min(length - i, n - pos);
+			System.arraycopy(bytes, offset + i, this.buffer, pos, chunk);
+			i += chunk;
+			pos = (pos + chunk) % n;
+		}
+		this.written += length;
+	}
+
+	/**
+	 * Get the number of bytes which were discarded because the buffer was full.
+	 *
+	 * @return Number of bytes discarded.
+	 */
+	public synchronized long getDiscarded() {
+		return Math.max(0, this.written - this.buffer.length);
+	}
+
+	/**
+	 * Get the output retained in the buffer. If any output was discarded, then
+	 * this is prefixed with a line indicating how much.
+	 *
+	 * @return Output retained.
+	 */
+	public synchronized byte[] toByteArray() {
+		int n = this.buffer.length;
+		long discarded = getDiscarded();
+		byte[] header = discarded == 0 ? new byte[0]
+				: ("[... " + discarded + " bytes discarded ...]\n").getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$ //$NON-NLS-2$
+		int size = (int) Math.min(this.written, n);
+		byte[] bytes = new byte[header.length + size];
+		System.arraycopy(header, 0, bytes, 0, header.length);
+		int start = (int) ((this.written - size) % n);
+		int first = Math.min(size, n - start);
+		System.arraycopy(this.buffer, start, bytes, header.length, first);
+		System.arraycopy(this.buffer, 0, bytes, header.length + first, size - first);
+		return bytes;
+	}
+
+	/**
+	 * Start a (daemon) thread which reads a given stream until it is exhausted,
+	 * writing everything read into a given capture. This ensures the process
+	 * producing the stream can never block because its output is not being
+	 * consumed.
+	 *
+	 * @param input   The stream to drain.
+	 * @param capture The capture to write into.
+	 * @return The thread draining the stream.
+	 */
+	public static Thread drain(InputStream input, OutputCapture capture) {
+		Thread t = new Thread(() -> {
+			byte[] bytes = new byte[8192];
+			try {
+				int n;
+				while ((n = input.read(bytes)) >= 0) {
+					capture.write(bytes, 0, n);
+				}
+			} catch (IOException e) {
+				// Stream closed (e.g. process destroyed), so nothing more to read.
+			}
+		});
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+}
@@ -0,0 +1,159 @@
+package tinyboycov.util;
+
+import java.util.Arrays;
+
+import javr.memory.ByteMemory;
+
+/**
+ * A byte memory which tracks which of its pages have been written since it
+ * was last reset. Since memory begins zeroed, any page not written must still
+ * be zero. Hence, resetting only needs to zero those pages written, and a
+ * snapshot only needs to hold those pages written. For a fuzzing run, which
+ * typically touches only a small part of SRAM, both are then much cheaper than
+ * copying or zeroing the whole memory.
+ */
+public final class PagedMemory extends ByteMemory {
+	/**
+	 * Number of address bits selecting a byte within a page.
+	 */
+	private static final int PAGE_BITS = 4;
+	/**
+	 * Number of bytes in a page.
+	 */
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	/**
+	 * The set of pages written since the last reset.
+	 */
+	private final long[] dirty;
+
+	/**
+	 * Construct a zeroed memory of a given size.
+	 *
+	 * @param size Number of bytes.
+	 */
+	public PagedMemory(int size) {
+		super(size);
+		int pages = (size + PAGE_SIZE - 1) >>> PAGE_BITS;
+		this.dirty = new long[(pages + 63) >>> 6];
+	}
+
+	@Override
+	public void write(int address, byte value) {
+		this.data[address] = value;
+		mark(address);
+	}
+
+	@Override
+	public void poke(int address, byte value) {
+		this.data[address] = value;
+		mark(address);
+	}
+
+	@Override
+	public void write(int address, byte[] bytes) {
+		System.arraycopy(bytes, 0, this.data, address, bytes.length);
+		for (int i = 0; i < bytes.length; i += PAGE_SIZE) {
+			mark(address + i);
+		}
+		if (bytes.length != 0) {
+			mark(address + bytes.length - 1);
+		}
+	}
+
+	/**
+	 * Mark the page holding a given address as written. This must be called by
+	 * anything writing to the backing array directly (e.g. translated code).
+	 *
+	 * @param address The address written.
+	 */
+	public void mark(int address) {
+		int page = address >>> PAGE_BITS;
+		this.dirty[page >>> 6] |= 1L << page;
+	}
+
+	/**
+	 * Zero those pages written since the last reset.
+	 */
+	@Override
+	public void reset() {
+		long[] d = this.dirty;
+		for (int i = 0; i != d.length; ++i) {
+			for (long bits = d[i]; bits != 0; bits &= bits - 1) {
+				int start = ((i << 6) + Long.numberOfTrailingZeros(bits)) << PAGE_BITS;
+				Arrays.fill(this.data, start, Math.min(start + PAGE_SIZE, this.data.length), (byte) 0);
+			}
+			d[i] = 0;
+		}
+	}
+
+	/**
+	 * Take a copy of those pages written since the last reset, suitable for
+	 * passing to <code>restore()</code>.
+	 *
+	 * @return The pages written.
+	 */
+	public Pages save() {
+		long[] d = this.dirty;
+		int n = 0;
+		for (int i = 0; i != d.length; ++i) {
+			n += Long.bitCount(d[i]);
+		}
+		int[] pages = new int[n];
+		byte[] bytes = new byte[n << PAGE_BITS];
+		int k = 0;
+		for (int i = 0; i != d.length; ++i) {
+			for (long bits = d[i]; bits != 0; bits &= bits - 1) {
+				int page = (i << 6) + Long.numberOfTrailingZeros(bits);
+				int start = page << PAGE_BITS;
+				System.arraycopy(this.data, start, bytes, k << PAGE_BITS, Math.min(PAGE_SIZE, this.data.length - start));
+				pages[k++] = page;
+			}
+		}
+		return new Pages(pages, bytes);
+	}
+
+	/**
+	 * Overwrite the contents of this memory with that previously saved. This
+	 * must have been saved from a memory of the same size.
+	 *
+	 * @param saved Pages returned from <code>save()</code>.
+	 */
+	public void restore(Pages saved) {
+		reset();
+		for (int k = 0; k != saved.pages.length; ++k) {
+			int page = saved.pages[k];
+			int start = page << PAGE_BITS;
+			System.arraycopy(saved.bytes, k << PAGE_BITS, this.data, start, Math.min(PAGE_SIZE, this.data.length - start));
+			this.dirty[page >>> 6] |= 1L << page;
+		}
+	}
+
+	/**
+	 * Get the array backing this memory. This must not be written except
+	 * through this memory (or followed by a call to <code>mark()</code>).
+	 *
+	 * @return The backing array.
+	 */
+	public byte[] getBytes() {
+		return this.data;
+	}
+
+	/**
+	 * An immutable copy of those pages of a memory which had been written.
+	 */
+	public static final class Pages {
+		/**
+		 * Index of each page held, in ascending order.
+		 */
+		private final int[] pages;
+		/**
+		 * Contents of each page held, one after another.
+		 */
+		private final byte[] bytes;
+
+		Pages(int[] pages, byte[] bytes) {
+			this.pages = pages;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -6,7 +6,9 @@ import java.io.*;
 import java.lang.ProcessBuilder.Redirect;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jdt.annotation.Nullable;
@@ -15,7 +17,12 @@ import org.eclipse.jdt.annotation.Nullable;
  * Responsible for executing a Java method whilst enforcing a guaranteed
  * timeout. This is challenging in Java because there is no explicit (reliable)
  * support for this. Instead, we have to spin up a separate JVM into which the
- * method is actually executed.
+ * method is actually executed. Since starting a JVM (and warming it up) is
+ * expensive, such JVMs are pooled by default. That is, a worker JVM accepts
+ * successive invocations over its standard streams, and is only discarded when
+ * an invocation times out (or the worker exits of its own accord). In either
+ * case, output from the method is drained concurrently into bounded buffers,
+ * such that it can never block the method.
  *
  * @author David J. Pearce
  *
@@ -30,6 +37,54 @@ public class ProcessTimerMethod {
 	 * CLASSPATH to use for JVM being created.
 	 */
 	public static @Nullable String CLASSPATH = System.getProperty("java.class.path"); //$NON-NLS-1$
+	/**
+	 * Determines whether worker JVMs are reused between invocations, or a fresh
+	 * JVM is started for each.
+	 */
+	public static boolean POOLED = !Boolean.getBoolean("tinyboycov.fork"); //$NON-NLS-1$
+	/**
+	 * Maximum number of bytes of standard output (and, likewise, standard error)
+	 * retained in an outcome. Beyond this, only the most recent output is kept.
+	 */
+	public static int CAPTURE_LIMIT = 1 << 20;
+	/**
+	 * Determines whether output is also forwarded to the console as it is
+	 * produced (i.e. rather than only being captured).
+	 */
+	public static boolean FORWARD = Boolean.getBoolean("tinyboycov.live"); //$NON-NLS-1$
+	/**
+	 * Command-line flag which instructs a JVM to act as a pooled worker.
+	 */
+	private static final String WORKER_FLAG = "-worker"; //$NON-NLS-1$
+	/**
+	 * Frame tag for output written to standard output by a worker.
+	 */
+	private static final int STDOUT_FRAME = 1;
+	/**
+	 * Frame tag for output written to standard error by a worker.
+	 */
+	private static final int STDERR_FRAME = 2;
+	/**
+	 * Frame tag for the exit code of an invocation.
+	 */
+	private static final int EXIT_FRAME = 3;
+	/**
+	 * Response indicating a worker has exited.
+	 */
+	private static final Integer EXITED = Integer.valueOf(Integer.MIN_VALUE);
+	/**
+	 * Worker JVMs which are not currently executing anything.
+	 */
+	private static final ArrayDeque<Worker> IDLE = new ArrayDeque<>();
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			synchronized (IDLE) {
+				for (Worker w : IDLE) {
+					w.process.destroyForcibly();
+				}
+			}
+		}));
+	}
 
 	/**
 	 * Execute a given method with zero or more arguments whilst ensuring a timeout.
@@ -42,6 +97,9 @@ public class ProcessTimerMethod {
 	 * @throws Throwable If something goes wrong.
 	 */
 	public static Outcome exec(long timeout, String receiver, String method, Object... args) throws Throwable {
+		if (POOLED) {
+			return execPooled(timeout, receiver, method, args);
+		}
 		// ===================================================
 		// Construct command
 		// ===================================================
@@ -56,9 +114,13 @@ public class ProcessTimerMethod {
 		// Construct the process
 		// ===================================================
 		ProcessBuilder builder = new ProcessBuilder(command);
-		builder.redirectError(Redirect.INHERIT);
-		builder.redirectOutput(Redirect.INHERIT);
 		Process child = builder.start();
+		// Drain output whilst the child runs, otherwise it could block on a full pipe
+		OutputCapture stdout = new OutputCapture(CAPTURE_LIMIT, FORWARD ? System.out : null);
+		OutputCapture stderr = new OutputCapture(CAPTURE_LIMIT, FORWARD ? System.err : null);
+		Thread outDrain = OutputCapture.drain(child.getInputStream(), stdout);
+		Thread errDrain = OutputCapture.drain(child.getErrorStream(), stderr);
+		boolean success = false;
 		try {
 			// first, send over the method in question + args
 			OutputStream output = child.getOutputStream();
@@ -68,41 +130,104 @@ public class ProcessTimerMethod {
 			oos.writeObject(args);
 			oos.flush();
 			output.flush();
-			// second, read the result whilst checking for a timeout
-			try (InputStream input = child.getInputStream(); InputStream error = child.getErrorStream()) {
-				assert input != null;
-				assert error != null;
-				boolean success = child.waitFor(timeout, TimeUnit.MILLISECONDS);
-				byte[] stdout = readInputStream(input);
-				byte[] stderr = readInputStream(error);
-				oos.close();
-				output.close();
-				error.close();
-				return new Outcome(success ? Integer.valueOf(child.exitValue()) : null, stdout, stderr);
-			}
+			// second, wait for the result whilst checking for a timeout
+			success = child.waitFor(timeout, TimeUnit.MILLISECONDS);
+			oos.close();
 		} finally {
 			// make sure child process is destroyed.
-			child.destroy();
+			child.destroyForcibly();
 		}
+		// Once the child has gone, its output streams are closed
+		outDrain.join();
+		errDrain.join();
+		return new Outcome(success ? Integer.valueOf(child.exitValue()) : null, stdout.toByteArray(),
+				stderr.toByteArray());
 	}
 
 	/**
-	 * Read all available data from an input stream.
+	 * Execute a given method on a pooled worker JVM whilst ensuring a timeout. An
+	 * idle worker is used if there is one, otherwise a new one is started. If the
+	 * method does not complete in time, or does not succeed, then the worker is
+	 * killed rather than being returned to the pool. This ensures nothing left
+	 * behind by a failed method (e.g. a window, or a static it modified) can
+	 * affect the next method executed.
 	 *
-	 * @param input Stream from which to read.
-	 * @return byte array containing data read.
+	 * @param timeout  Timeout (in ms).
+	 * @param receiver Identifies enclosing class.
+	 * @param method   Identifies method name
+	 * @param args     Arguments to supply to method.
+	 * @return Outcome of executing the method.
+	 * @throws Throwable If something goes wrong.
+	 */
+	private static Outcome execPooled(long timeout, String receiver, String method, Object... args)
+			throws Throwable {
+		Worker worker = acquire();
+		OutputCapture stdout = new OutputCapture(CAPTURE_LIMIT, FORWARD ? System.out : null);
+		OutputCapture stderr = new OutputCapture(CAPTURE_LIMIT, FORWARD ? System.err : null);
+		worker.stdout = stdout;
+		worker.stderr = stderr;
+		Integer exitCode = null;
+		boolean reusable = false;
+		try {
+			worker.send(receiver, method, args);
+			exitCode = worker.responses.poll(timeout, TimeUnit.MILLISECONDS);
+			if (exitCode == EXITED) {
+				// Worker exited (e.g. the method called System.exit()), so report its exit
+				// code.
+				exitCode = worker.process.waitFor(timeout, TimeUnit.MILLISECONDS)
+						? Integer.valueOf(worker.process.exitValue())
+						: null;
+			} else {
+				reusable = exitCode != null && exitCode.intValue() == 0;
+			}
+		} finally {
+			if (reusable) {
+				release(worker);
+			} else {
+				worker.process.destroyForcibly();
+			}
+		}
+		return new Outcome(exitCode, stdout.toByteArray(), stderr.toByteArray());
+	}
+
+	/**
+	 * Get an idle worker JVM, starting a new one if necessary.
+	 *
+	 * @return A worker which is not executing anything.
 	 * @throws IOException If something goes wrong.
 	 */
-	private static byte[] readInputStream(InputStream input) throws IOException {
-		byte[] buffer = new byte[1024];
-		ByteArrayOutputStream output = new ByteArrayOutputStream();
-		while (input.available() > 0) {
-			int count = input.read(buffer);
-			output.write(buffer, 0, count);
+	private static Worker acquire() throws IOException {
+		synchronized (IDLE) {
+			while (!IDLE.isEmpty()) {
+				Worker w = IDLE.pop();
+				if (w.process.isAlive()) {
+					return w;
+				}
+			}
+		}
+		ArrayList<@Nullable String> command = new ArrayList<>();
+		command.add(JAVA_CMD);
+		command.add("-ea"); // enable assertions by default //$NON-NLS-1$
+		command.add("-cp"); //$NON-NLS-1$
+		command.add(CLASSPATH);
+		command.add("tinyboycov.util.ProcessTimerMethod"); //$NON-NLS-1$
+		command.add(WORKER_FLAG);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		// NOTE: output from the method is framed over standard output, hence anything
+		// on standard error comes from the JVM itself.
+		builder.redirectError(Redirect.INHERIT);
+		return new Worker(builder.start());
+	}
+
+	/**
+	 * Return a worker JVM to the pool once it has finished executing.
+	 *
+	 * @param worker The worker to return.
+	 */
+	private static void release(Worker worker) {
+		synchronized (IDLE) {
+			IDLE.push(worker);
 		}
-		byte[] out = output.toByteArray();
-		assert out != null;
-		return out;
 	}
 
 	/**
@@ -112,25 +237,17 @@ public class ProcessTimerMethod {
 	 * @throws IOException If something goes wrong.
 	 */
 	public static void main(String[] args) throws IOException {
+		if (args.length > 0 && args[0].equals(WORKER_FLAG)) {
+			serve();
+			return;
+		}
 		ObjectInputStream ois = new ObjectInputStream(System.in);
 		int exitCode=0;
 		try {
 			String receiver = (String) ois.readObject();
 			String name = (String) ois.readObject();
 			Object[] arguments = (Object[]) ois.readObject();
-			// now, find the object
-			Class<?>[] paramtypes = new Class[arguments.length];
-			int i = 0;
-			for (Object arg : arguments) {
-				paramtypes[i++] = arg.getClass();
-			}
-			Class<?> clazz = Class.forName(receiver);
-			Object instance = clazz.getDeclaredConstructor().newInstance();
-			Method method = clazz.getMethod(name, paramtypes);
-			method.invoke(instance, arguments);
-		} catch(InvocationTargetException e) {
-			e.getCause().printStackTrace();
-			exitCode=-1;
+			exitCode = invoke(receiver, name, arguments);
 		} catch (Exception e) {
 			e.printStackTrace();
 			exitCode=-2;
@@ -140,6 +257,170 @@ public class ProcessTimerMethod {
 
 	}
 
+	/**
+	 * Act as a pooled worker. That is, repeatedly read an invocation from
+	 * standard input, execute it and then write the exit code to standard output.
+	 * This continues until standard input is closed. Each invocation is a single
+	 * frame consisting of its length, followed by the receiver and method names,
+	 * and then the serialised arguments. Any output produced by the method is
+	 * likewise written to standard output in frames, each consisting of a tag
+	 * (identifying the stream written), length and contents. Finally, the exit
+	 * code is written as a frame with no contents.
+	 *
+	 * @throws IOException If something goes wrong.
+	 */
+	private static void serve() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+		System.setOut(new PrintStream(new FrameOutputStream(out, STDOUT_FRAME), true));
+		System.setErr(new PrintStream(new FrameOutputStream(out, STDERR_FRAME), true));
+		while (true) {
+			byte[] frame;
+			try {
+				frame = new byte[in.readInt()];
+				in.readFully(frame);
+			} catch (EOFException e) {
+				return;
+			}
+			int exitCode;
+			try {
+				DataInputStream request = new DataInputStream(new ByteArrayInputStream(frame));
+				String receiver = request.readUTF();
+				String name = request.readUTF();
+				ObjectInputStream ois = new ObjectInputStream(request);
+				Object[] arguments = (Object[]) ois.readObject();
+				exitCode = invoke(receiver, name, arguments);
+			} catch (Exception e) {
+				e.printStackTrace();
+				exitCode = -2;
+			}
+			System.out.flush();
+			System.err.flush();
+			synchronized (out) {
+				// NOTE: mask as for the exit code of a process.
+				out.writeByte(EXIT_FRAME);
+				out.writeInt(exitCode & 0xFF);
+				out.flush();
+			}
+		}
+	}
+
+	/**
+	 * Invoke a given method on a fresh instance of a given class.
+	 *
+	 * @param receiver  Identifies enclosing class.
+	 * @param name      Identifies method name.
+	 * @param arguments Arguments to supply to method.
+	 * @return Exit code (where 0 = success, -1 = method threw an exception).
+	 * @throws Exception If the method could not be invoked.
+	 */
+	private static int invoke(String receiver, String name, Object[] arguments) throws Exception {
+		// now, find the object
+		Class<?>[] paramtypes = new Class[arguments.length];
+		int i = 0;
+		for (Object arg : arguments) {
+			paramtypes[i++] = arg.getClass();
+		}
+		Class<?> clazz = Class.forName(receiver);
+		Object instance = clazz.getDeclaredConstructor().newInstance();
+		Method method = clazz.getMethod(name, paramtypes);
+		try {
+			method.invoke(instance, arguments);
+			return 0;
+		} catch(InvocationTargetException e) {
+			e.getCause().printStackTrace();
+			return -1;
+		}
+	}
+
+	/**
+	 * A worker JVM which executes successive invocations.
+	 */
+	private static final class Worker {
+		/**
+		 * The worker process itself.
+		 */
+		private final Process process;
+		/**
+		 * Stream to which invocations are written.
+		 */
+		private final DataOutputStream output;
+		/**
+		 * Exit codes read from the worker (or <code>EXITED</code> once it has gone).
+		 */
+		private final LinkedBlockingQueue<Integer> responses = new LinkedBlockingQueue<>();
+		/**
+		 * Captures standard output of the current invocation.
+		 */
+		private volatile @Nullable OutputCapture stdout;
+		/**
+		 * Captures standard error of the current invocation.
+		 */
+		private volatile @Nullable OutputCapture stderr;
+
+		/**
+		 * Construct a worker for a given process. This starts a thread which reads
+		 * frames from the worker for as long as it lives.
+		 *
+		 * @param process The worker process.
+		 */
+		Worker(Process process) {
+			this.process = process;
+			this.output = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+			DataInputStream input = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+			Thread t = new Thread(() -> read(input));
+			t.setDaemon(true);
+			t.start();
+		}
+
+		/**
+		 * Read frames from the worker until it exits.
+		 *
+		 * @param input Standard output of the worker.
+		 */
+		private void read(DataInputStream input) {
+			try {
+				while (true) {
+					int tag = input.readByte();
+					int length = input.readInt();
+					if (tag == EXIT_FRAME) {
+						this.responses.add(Integer.valueOf(length));
+					} else {
+						byte[] bytes = new byte[length];
+						input.readFully(bytes);
+						OutputCapture capture = tag == STDOUT_FRAME ? this.stdout : this.stderr;
+						if (capture != null) {
+							capture.write(bytes, 0, length);
+						}
+					}
+				}
+			} catch (IOException e) {
+				this.responses.add(EXITED);
+			}
+		}
+
+		/**
+		 * Send an invocation to this worker.
+		 *
+		 * @param receiver Identifies enclosing class.
+		 * @param method   Identifies method name
+		 * @param args     Arguments to supply to method.
+		 * @throws IOException If something goes wrong.
+		 */
+		void send(String receiver, String method, Object[] args) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream frame = new DataOutputStream(bytes);
+			frame.writeUTF(receiver);
+			frame.writeUTF(method);
+			ObjectOutputStream oos = new ObjectOutputStream(frame);
+			oos.writeObject(args);
+			oos.flush();
+			this.output.writeInt(bytes.size());
+			bytes.writeTo(this.output);
+			this.output.flush();
+		}
+	}
+
 
 	/**
 	 * Represents an outcome from executing a given method. This helps us determine
@@ -200,4 +481,46 @@ public class ProcessTimerMethod {
 			return this.stderr;
 		}
 	}
+
+	/**
+	 * Writes everything written to it as frames on an underlying stream, where
+	 * each frame is tagged to identify this stream. Frames from different
+	 * streams sharing the same underlying stream are never interleaved.
+	 */
+	private static final class FrameOutputStream extends OutputStream {
+		/**
+		 * The underlying stream.
+		 */
+		private final DataOutputStream out;
+		/**
+		 * Tag identifying this stream.
+		 */
+		private final int tag;
+
+		/**
+		 * Construct a new frame stream.
+		 *
+		 * @param out The underlying stream.
+		 * @param tag Tag identifying this stream.
+		 */
+		FrameOutputStream(DataOutputStream out, int tag) {
+			this.out = out;
+			this.tag = tag;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			synchronized (this.out) {
+				this.out.writeByte(this.tag);
+				this.out.writeInt(length);
+				this.out.write(bytes, offset, length);
+				this.out.flush();
+			}
+		}
+	}
 }
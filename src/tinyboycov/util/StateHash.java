@@ -0,0 +1,146 @@
+package tinyboycov.util;
+
+import java.util.BitSet;
+
+/**
+ * Provides a fast, non-cryptographic 64-bit fingerprint of machine states
+ * (e.g. the contents of data memory at the end of a run). This follows the
+ * structure of xxHash64, though it processes the input as a single stream of
+ * lanes rather than four interleaved ones.
+ */
+public final class StateHash {
+	// Primes used by xxHash64
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+	private StateHash() {
+	}
+
+	/**
+	 * Compute the fingerprint of a given array of bytes.
+	 *
+	 * @param bytes The bytes to hash.
+	 * @return The fingerprint.
+	 */
+	public static long hash(byte[] bytes) {
+		long acc = PRIME5 + bytes.length;
+		int i = 0;
+		for (; i + 8 <= bytes.length; i += 8) {
+			long lane = (bytes[i] & 0xFFL) | ((bytes[i + 1] & 0xFFL) << 8) | ((bytes[i + 2] & 0xFFL) << 16)
+					| ((bytes[i + 3] & 0xFFL) << 24) | ((bytes[i + 4] & 0xFFL) << 32) | ((bytes[i + 5] & 0xFFL) << 40)
+					| ((bytes[i + 6] & 0xFFL) << 48) | ((bytes[i + 7] & 0xFFL) << 56);
+			acc = round(acc, lane);
+		}
+		for (; i < bytes.length; ++i) {
+			acc = tail(acc, bytes[i]);
+		}
+		return avalanche(acc);
+	}
+
+	/**
+	 * Compute the fingerprint of a given view of memory. This gives the same
+	 * fingerprint as for a copy of the view, but without making that copy.
+	 *
+	 * @param view The memory to hash.
+	 * @return The fingerprint.
+	 */
+	public static long hash(MemoryView view) {
+		int n = view.size();
+		long acc = PRIME5 + n;
+		int i = 0;
+		for (; i + 8 <= n; i += 8) {
+			long lane = 0;
+			for (int j = 7; j >= 0; --j) {
+				lane = (lane << 8) | (view.get(i + j) & 0xFFL);
+			}
+			acc = round(acc, lane);
+		}
+		for (; i < n; ++i) {
+			acc = tail(acc, view.get(i));
+		}
+		return avalanche(acc);
+	}
+
+	/**
+	 * Compute the fingerprint of a given set of bits (e.g. the instructions
+	 * executed by a run). Unlike <code>BitSet.hashCode()</code>, this uses all
+	 * 64 bits.
+	 *
+	 * @param bits The bits to hash.
+	 * @return The fingerprint.
+	 */
+	public static long hash(BitSet bits) {
+		long[] words = bits.toLongArray();
+		long acc = PRIME5 + words.length;
+		for (int i = 0; i != words.length; ++i) {
+			acc = round(acc, words[i]);
+		}
+		return avalanche(acc);
+	}
+
+	/**
+	 * Compute the fingerprint of a run, given its final state of data memory and
+	 * the instructions it executed.
+	 *
+	 * @param state    The final state of data memory.
+	 * @param coverage The instructions executed.
+	 * @return The fingerprint.
+	 */
+	public static long fingerprint(MemoryView state, BitSet coverage) {
+		return combine(hash(state), hash(coverage));
+	}
+
+	/**
+	 * Combine two fingerprints into one. This is not commutative.
+	 *
+	 * @param h1 The first fingerprint.
+	 * @param h2 The second fingerprint.
+	 * @return The combined fingerprint.
+	 */
+	public static long combine(long h1, long h2) {
+		long acc = h1 ^ (Long.rotateLeft(h2 * PRIME2, 31) * PRIME1);
+		return avalanche((Long.rotateLeft(acc, 27) * PRIME1) + PRIME4);
+	}
+
+	/**
+	 * Mix an eight byte lane into the accumulator.
+	 *
+	 * @param acc  The accumulator.
+	 * @param lane The lane.
+	 * @return The updated accumulator.
+	 */
+	private static long round(long acc, long lane) {
+		acc ^= Long.rotateLeft(lane * PRIME2, 31) * PRIME1;
+		return (Long.rotateLeft(acc, 27) * PRIME1) + PRIME4;
+	}
+
+	/**
+	 * Mix a single trailing byte into the accumulator.
+	 *
+	 * @param acc The accumulator.
+	 * @param b   The byte.
+	 * @return The updated accumulator.
+	 */
+	private static long tail(long acc, byte b) {
+		acc ^= (b & 0xFFL) * PRIME5;
+		return Long.rotateLeft(acc, 11) * PRIME1;
+	}
+
+	/**
+	 * Ensure every input bit affects every output bit.
+	 *
+	 * @param h The value to mix.
+	 * @return The mixed value.
+	 */
+	private static long avalanche(long h) {
+		h ^= h >>> 33;
+		h *= PRIME2;
+		h ^= h >>> 29;
+		h *= PRIME3;
+		h ^= h >>> 32;
+		return h;
+	}
+}
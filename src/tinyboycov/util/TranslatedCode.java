@@ -0,0 +1,561 @@
+package tinyboycov.util;
+
+import java.lang.reflect.Field;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import javr.core.AVR;
+import javr.memory.ByteMemory;
+import javr.memory.IoMemory;
+import javr.memory.MultiplexedMemory;
+
+/**
+ * The base class of all code generated by the <code>Translator</code>. An
+ * instance executes the basic blocks of one firmware directly against the
+ * registers, stack and SRAM of one AVR, whilst recording coverage exactly as
+ * the interpreter would. Each block runs from a given address up to (and
+ * including) the next control transfer. Anything which cannot be executed
+ * directly (e.g. an access to I/O space) causes a side exit back to the
+ * interpreter, just before the instruction in question.
+ *
+ * <p>
+ * The helpers here replicate the interpreter's semantics precisely, including
+ * its handling of the status register. Since generated classes are defined by
+ * their own class loader, the members they use must be
+ * <code>protected</code>.
+ * </p>
+ */
+public abstract class TranslatedCode {
+	/**
+	 * Data address at which SRAM begins.
+	 */
+	protected static final int RAM = 0x60;
+	/**
+	 * Carry flag.
+	 */
+	protected static final int C = 0x01;
+	/**
+	 * Zero flag.
+	 */
+	protected static final int Z = 0x02;
+	/**
+	 * Negative flag.
+	 */
+	protected static final int N = 0x04;
+	/**
+	 * Two's complement overflow flag.
+	 */
+	protected static final int V = 0x08;
+	/**
+	 * Sign flag (i.e. <code>N ^ V</code>).
+	 */
+	protected static final int S = 0x10;
+	/**
+	 * Half carry flag.
+	 */
+	protected static final int H = 0x20;
+	/**
+	 * Bit copy storage.
+	 */
+	protected static final int T = 0x40;
+	/**
+	 * Offset of the stack pointer within I/O space.
+	 */
+	private static final int SPL = 0x3D;
+	/**
+	 * The general purpose registers.
+	 */
+	protected byte[] r = new byte[0];
+	/**
+	 * SRAM, where <code>m[0]</code> is at data address <code>RAM</code>.
+	 */
+	protected byte[] m = new byte[0];
+	/**
+	 * I/O space (excluding ports), which holds the stack pointer.
+	 */
+	protected byte[] io = new byte[0];
+	/**
+	 * Code memory, as read by <code>LPM</code>.
+	 */
+	protected byte[] flash = new byte[0];
+	/**
+	 * The status register.
+	 */
+	protected int sreg;
+	/**
+	 * Number of instructions executed by the most recent block.
+	 */
+	protected int executed;
+	/**
+	 * SRAM, if its written pages must be tracked.
+	 */
+	private @Nullable PagedMemory sram;
+	/**
+	 * Records the set of instructions executed.
+	 */
+	private @Nullable CoverageRecorder coverage;
+	/**
+	 * Records the edges executed.
+	 */
+	private @Nullable EdgeMap edges;
+
+	/**
+	 * Execute the block beginning at a given address, recording coverage for each
+	 * instruction executed.
+	 *
+	 * @param pc The (word) address of the block.
+	 * @return The address at which execution should continue, or <code>-1</code>
+	 *         if nothing was executed (i.e. no block begins here, or its first
+	 *         instruction must be interpreted).
+	 */
+	public abstract int execute(int pc);
+
+	/**
+	 * Bind this code to the memory of a given AVR, and to the recorders which its
+	 * coverage is written to. This fails if the AVR's memory is not laid out as
+	 * expected (i.e. registers, then I/O space, then SRAM).
+	 *
+	 * @param avr      The AVR in question.
+	 * @param coverage Recorder of instructions executed.
+	 * @param edges    Recorder of edges executed.
+	 * @return True if successfully bound, false otherwise.
+	 */
+	public boolean bind(AVR avr, CoverageRecorder coverage, EdgeMap edges) {
+		AVR.Memory data = avr.getData();
+		AVR.Memory code = avr.getCode();
+		if (!(data instanceof MultiplexedMemory) || !(code instanceof ByteMemory)) {
+			return false;
+		}
+		Object[] banks = (Object[]) get(MultiplexedMemory.class, "memories", data); //$NON-NLS-1$
+		if (banks.length != 3 || !(banks[0] instanceof ByteMemory) || !(banks[1] instanceof IoMemory)
+				|| !(banks[2] instanceof ByteMemory)) {
+			return false;
+		}
+		IoMemory ports = (IoMemory) banks[1];
+		Object space = get(IoMemory.class, "memory", ports); //$NON-NLS-1$
+		if (!(space instanceof ByteMemory) || ports.getPort(SPL) != null || ports.getPort(SPL + 1) != null) {
+			return false;
+		}
+		this.r = bytes(banks[0]);
+		this.io = bytes(space);
+		this.m = bytes(banks[2]);
+		this.sram = banks[2] instanceof PagedMemory ? (PagedMemory) banks[2] : null;
+		this.flash = bytes(code);
+		if (this.r.length != 32 || this.io.length != (RAM - 32)) {
+			return false;
+		}
+		this.coverage = coverage;
+		this.edges = edges;
+		return true;
+	}
+
+	/**
+	 * Record coverage for an instruction about to be executed.
+	 *
+	 * @param pc The (word) address of the instruction.
+	 */
+	protected final void hit(int pc) {
+		CoverageRecorder c = this.coverage;
+		EdgeMap e = this.edges;
+		if (c != null && e != null) {
+			c.hit(pc);
+			e.hit(pc);
+		}
+	}
+
+	/**
+	 * Record coverage for an instruction being skipped. This is not executed and,
+	 * hence, is not an edge.
+	 *
+	 * @param pc The (word) address of the instruction.
+	 */
+	protected final void skip(int pc) {
+		CoverageRecorder c = this.coverage;
+		if (c != null) {
+			c.hit(pc);
+		}
+	}
+
+	/**
+	 * Check whether a given data address lies in SRAM.
+	 *
+	 * @param a The data address.
+	 * @return True if it does.
+	 */
+	protected final boolean ram(int a) {
+		return a >= RAM && (a - RAM) < this.m.length;
+	}
+
+	/**
+	 * Write a byte of SRAM.
+	 *
+	 * @param a The data address, which must lie in SRAM.
+	 * @param v The byte to write.
+	 */
+	protected final void store(int a, byte v) {
+		int i = a - RAM;
+		this.m[i] = v;
+		PagedMemory p = this.sram;
+		if (p != null) {
+			p.mark(i);
+		}
+	}
+
+	/**
+	 * Read a register pair (e.g. <code>X</code>) as an unsigned word.
+	 *
+	 * @param d The lower register of the pair.
+	 * @return The word.
+	 */
+	protected final int word(int d) {
+		return ((this.r[d + 1] & 0xFF) << 8) | (this.r[d] & 0xFF);
+	}
+
+	/**
+	 * Write a register pair (e.g. <code>X</code>).
+	 *
+	 * @param d The lower register of the pair.
+	 * @param v The word to write, of which only the lower sixteen bits are used.
+	 */
+	protected final void word(int d, int v) {
+		this.r[d] = (byte) v;
+		this.r[d + 1] = (byte) (v >> 8);
+	}
+
+	/**
+	 * Read the stack pointer.
+	 *
+	 * @return The stack pointer.
+	 */
+	protected final int sp() {
+		return ((this.io[SPL + 1] & 0xFF) << 8) | (this.io[SPL] & 0xFF);
+	}
+
+	/**
+	 * Write the stack pointer.
+	 *
+	 * @param v The new stack pointer.
+	 */
+	protected final void sp(int v) {
+		this.io[SPL] = (byte) v;
+		this.io[SPL + 1] = (byte) (v >> 8);
+	}
+
+	/**
+	 * Compute <code>a + b</code>, setting flags as for <code>ADD</code>.
+	 *
+	 * @param a The first operand.
+	 * @param b The second operand.
+	 * @return The result.
+	 */
+	protected final byte add(byte a, byte b) {
+		return sum(a, b, 0);
+	}
+
+	/**
+	 * Compute <code>a + b + C</code>, setting flags as for <code>ADC</code>.
+	 *
+	 * @param a The first operand.
+	 * @param b The second operand.
+	 * @return The result.
+	 */
+	protected final byte adc(byte a, byte b) {
+		return sum(a, b, this.sreg & C);
+	}
+
+	/**
+	 * Compute <code>a - b</code>, setting flags as for <code>SUBI</code> (and,
+	 * likewise, <code>CP</code> and <code>CPI</code>).
+	 *
+	 * @param a The first operand.
+	 * @param b The second operand.
+	 * @return The result.
+	 */
+	protected final byte sub(byte a, byte b) {
+		return difference(a, b, 0, true);
+	}
+
+	/**
+	 * Compute <code>a - b</code>, setting flags as for <code>SUB</code>. Observe
+	 * that, as for <code>SBC</code> (but unlike <code>SUBI</code> and
+	 * <code>CP</code>), the interpreter only ever clears the zero flag here.
+	 *
+	 * @param a The first operand.
+	 * @param b The second operand.
+	 * @return The result.
+	 */
+	protected final byte subz(byte a, byte b) {
+		return difference(a, b, 0, (this.sreg & Z) != 0);
+	}
+
+	/**
+	 * Compute <code>a - b - C</code>, setting flags as for <code>SBC</code>
+	 * (and, likewise, <code>CPC</code>). Observe the zero flag is only ever
+	 * cleared.
+	 *
+	 * @param a The first operand.
+	 * @param b The second operand.
+	 * @return The result.
+	 */
+	protected final byte sbc(byte a, byte b) {
+		return difference(a, b, this.sreg & C, (this.sreg & Z) != 0);
+	}
+
+	/**
+	 * Set flags for the result of a logical operation (e.g. <code>AND</code>).
+	 *
+	 * @param res The result.
+	 * @return The result.
+	 */
+	protected final byte logic(int res) {
+		int b = res & 0xFF;
+		flags(S | V | N | Z, ((b & 0x80) != 0 ? S | N : 0) | zero(b));
+		return (byte) b;
+	}
+
+	/**
+	 * Compute the one's complement, setting flags as for <code>COM</code>.
+	 *
+	 * @param a The operand.
+	 * @return The result.
+	 */
+	protected final byte com(byte a) {
+		int res = ~a & 0xFF;
+		flags(S | V | N | Z | C, ((res & 0x80) != 0 ? S | N : 0) | zero(res) | C);
+		return (byte) res;
+	}
+
+	/**
+	 * Compute the two's complement, setting flags as for <code>NEG</code>.
+	 *
+	 * @param a The operand.
+	 * @return The result.
+	 */
+	protected final byte neg(byte a) {
+		int res = -a & 0xFF;
+		// NOTE: the interpreter computes the half carry from the complement of bit 3
+		// of the operand.
+		boolean h = (res & 0x08) != 0 || (a & 0x08) == 0;
+		boolean v = res == 0x80;
+		boolean n = (res & 0x80) != 0;
+		flags(H | S | V | N | Z | C, (h ? H : 0) | sign(n, v) | zero(res) | (res != 0 ? C : 0));
+		return (byte) res;
+	}
+
+	/**
+	 * Compute <code>a + 1</code>, setting flags as for <code>INC</code>.
+	 *
+	 * @param a The operand.
+	 * @return The result.
+	 */
+	protected final byte inc(byte a) {
+		int res = (a + 1) & 0xFF;
+		flags(S | V | N | Z, sign((res & 0x80) != 0, res == 0x80) | zero(res));
+		return (byte) res;
+	}
+
+	/**
+	 * Compute <code>a - 1</code>, setting flags as for <code>DEC</code>.
+	 *
+	 * @param a The operand.
+	 * @return The result.
+	 */
+	protected final byte dec(byte a) {
+		int res = (a - 1) & 0xFF;
+		flags(S | V | N | Z, sign((res & 0x80) != 0, res == 0x7F) | zero(res));
+		return (byte) res;
+	}
+
+	/**
+	 * Shift right arithmetically, setting flags as for <code>ASR</code>.
+	 *
+	 * @param a The operand.
+	 * @return The result.
+	 */
+	protected final byte asr(byte a) {
+		// NOTE: the interpreter sets carry from both bit 0 and bit 7 of the operand.
+		return shift((a >> 1) & 0xFF, (a & 0x81) != 0);
+	}
+
+	/**
+	 * Shift right, setting flags as for <code>LSR</code>. Observe the
+	 * interpreter shifts the sign-extended operand and, hence, bit 7 is
+	 * preserved (i.e. as for <code>ASR</code>).
+	 *
+	 * @param a The operand.
+	 * @return The result.
+	 */
+	protected final byte lsr(byte a) {
+		return shift((a >>> 1) & 0xFF, (a & 1) != 0);
+	}
+
+	/**
+	 * Rotate right through carry, setting flags as for <code>ROR</code>. As for
+	 * <code>LSR</code>, the interpreter shifts the sign-extended operand, such
+	 * that bit 7 of the operand is also carried into bit 7 of the result.
+	 *
+	 * @param a The operand.
+	 * @return The result.
+	 */
+	protected final byte ror(byte a) {
+		return shift(((a >>> 1) | ((this.sreg & C) << 7)) & 0xFF, (a & 1) != 0);
+	}
+
+	/**
+	 * Add an immediate to a register pair, setting flags as for
+	 * <code>ADIW</code>.
+	 *
+	 * @param d The lower register of the pair.
+	 * @param k The immediate.
+	 */
+	protected final void adiw(int d, int k) {
+		int w = word(d);
+		int res = w + k;
+		word(d, res);
+		boolean rdh7 = (w & 0x8000) != 0;
+		boolean r15 = (res & 0x8000) != 0;
+		boolean v = !rdh7 && r15;
+		flags(S | V | N | Z | C, sign(r15, v) | (res == 0 ? Z : 0) | (!r15 && rdh7 ? C : 0));
+	}
+
+	/**
+	 * Subtract an immediate from a register pair, setting flags as for
+	 * <code>SBIW</code>.
+	 *
+	 * @param d The lower register of the pair.
+	 * @param k The immediate.
+	 */
+	protected final void sbiw(int d, int k) {
+		int w = word(d);
+		int res = w - k;
+		word(d, res);
+		boolean rdh7 = (w & 0x8000) != 0;
+		boolean r15 = (res & 0x8000) != 0;
+		// NOTE: the interpreter computes overflow in the same way as carry.
+		boolean v = r15 && !rdh7;
+		flags(S | V | N | Z | C, sign(r15, v) | (res == 0 ? Z : 0) | (r15 && !rdh7 ? C : 0));
+	}
+
+	/**
+	 * Copy a bit of a register into the <code>T</code> flag, as for
+	 * <code>BST</code>.
+	 *
+	 * @param a The register.
+	 * @param b The bit.
+	 */
+	protected final void bst(byte a, int b) {
+		flags(T, (a & (1 << b)) != 0 ? T : 0);
+	}
+
+	/**
+	 * Compute the sum of two operands and a carry.
+	 *
+	 * @param a The first operand.
+	 * @param b The second operand.
+	 * @param c The carry in.
+	 * @return The result.
+	 */
+	private byte sum(byte a, byte b, int c) {
+		int x = a & 0xFF;
+		int y = b & 0xFF;
+		int res = (x + y + c) & 0xFF;
+		int carries = (x & y) | ((x | y) & ~res);
+		boolean v = (((x ^ res) & (y ^ res)) & 0x80) != 0;
+		flags(H | S | V | N | Z | C, ((carries & 0x08) != 0 ? H : 0) | sign((res & 0x80) != 0, v) | zero(res)
+				| ((carries & 0x80) != 0 ? C : 0));
+		return (byte) res;
+	}
+
+	/**
+	 * Compute the difference of two operands less a borrow.
+	 *
+	 * @param a    The first operand.
+	 * @param b    The second operand.
+	 * @param c    The borrow in.
+	 * @param keep Whether the zero flag may be set (i.e. otherwise it is only
+	 *             cleared).
+	 * @return The result.
+	 */
+	private byte difference(byte a, byte b, int c, boolean keep) {
+		int x = a & 0xFF;
+		int y = b & 0xFF;
+		int res = (x - y - c) & 0xFF;
+		int borrows = (~x & y) | ((~x | y) & res);
+		boolean v = (((x ^ y) & (x ^ res)) & 0x80) != 0;
+		flags(H | S | V | N | Z | C, ((borrows & 0x08) != 0 ? H : 0) | sign((res & 0x80) != 0, v)
+				| (keep ? zero(res) : 0) | ((borrows & 0x80) != 0 ? C : 0));
+		return (byte) res;
+	}
+
+	/**
+	 * Set flags for the result of a right shift.
+	 *
+	 * @param res The (byte) result.
+	 * @param c   The bit shifted out (i.e. the new carry).
+	 * @return The result.
+	 */
+	private byte shift(int res, boolean c) {
+		boolean n = (res & 0x80) != 0;
+		flags(S | V | N | Z | C, sign(n, n ^ c) | zero(res) | (c ? C : 0));
+		return (byte) res;
+	}
+
+	/**
+	 * Update a given set of flags in the status register.
+	 *
+	 * @param mask The flags to update.
+	 * @param bits Their new values.
+	 */
+	private void flags(int mask, int bits) {
+		this.sreg = (this.sreg & ~mask) | bits;
+	}
+
+	/**
+	 * Determine the negative, overflow and sign flags.
+	 *
+	 * @param n Negative flag.
+	 * @param v Overflow flag.
+	 * @return The flags.
+	 */
+	private static int sign(boolean n, boolean v) {
+		return (n ? N : 0) | (v ? V : 0) | (n != v ? S : 0);
+	}
+
+	/**
+	 * Determine the zero flag.
+	 *
+	 * @param res The (byte) result.
+	 * @return The flag.
+	 */
+	private static int zero(int res) {
+		return res == 0 ? Z : 0;
+	}
+
+	/**
+	 * Get the backing array of a byte memory.
+	 *
+	 * @param memory The memory.
+	 * @return Its bytes (not a copy).
+	 */
+	private static byte[] bytes(Object memory) {
+		return (byte[]) get(ByteMemory.class, "data", memory); //$NON-NLS-1$
+	}
+
+	/**
+	 * Read the value of a field which is not exposed by the emulator.
+	 *
+	 * @param clazz    Class declaring the field.
+	 * @param name     Name of the field.
+	 * @param instance Object to read from.
+	 * @return Value of the field.
+	 */
+	private static Object get(Class<?> clazz, String name, Object instance) {
+		try {
+			Field f = clazz.getDeclaredField(name);
+			f.setAccessible(true);
+			return f.get(instance);
+		} catch (NoSuchFieldException | IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
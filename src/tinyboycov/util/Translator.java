@@ -0,0 +1,899 @@
+package tinyboycov.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import javr.core.AVR;
+import javr.core.AvrInstruction;
+import tinyboycov.core.CorpusFile;
+
+/**
+ * Translates a firmware image ahead-of-time into a Java class, such that its
+ * basic blocks can be executed without decoding or dispatching on each
+ * instruction. Each block becomes a method of straight-line code which updates
+ * the registers and status register directly, and the JIT is then left to
+ * optimise it as normal. Instructions which touch peripherals (e.g.
+ * <code>IN</code>, <code>OUT</code> and <code>SBIS</code>), change the
+ * interrupt flag, jump indirectly, or halt the machine are never translated.
+ * Instead, the block ends just before them, and they are left to the
+ * interpreter. Thus, inputs are only ever read by the interpreter and, hence,
+ * the inputs consumed and coverage obtained are identical either way.
+ *
+ * <p>
+ * The generated source is compiled in memory with the system Java compiler.
+ * Where this is not available (e.g. when running on a JRE), no translation is
+ * produced and the interpreter is used throughout. Translations are cached by
+ * firmware, so each is only compiled once for any number of emulators.
+ * </p>
+ */
+public final class Translator {
+	/**
+	 * Translations computed so far, keyed by firmware hash.
+	 */
+	private static final ConcurrentHashMap<Long, Translator> CACHE = new ConcurrentHashMap<>();
+	/**
+	 * Maximum number of instructions in a single block. This keeps each method
+	 * well within the size the JIT is prepared to compile.
+	 */
+	private static final int MAX_BLOCK = 64;
+	/**
+	 * Number of consecutive addresses dispatched by each switch. Again, this
+	 * keeps each dispatch method small enough to be compiled.
+	 */
+	private static final int CHUNK_BITS = 7;
+	/**
+	 * Register pair used as the <code>X</code> pointer.
+	 */
+	private static final int X = 26;
+	/**
+	 * Register pair used as the <code>Y</code> pointer.
+	 */
+	private static final int Y = 28;
+	/**
+	 * Register pair used as the <code>Z</code> pointer.
+	 */
+	private static final int Z = 30;
+
+	/**
+	 * The decoded instructions being translated.
+	 */
+	private final AvrInstruction[] decoded;
+	/**
+	 * Identifies the reachable instructions, since only these are translated.
+	 * This avoids translating data, or the middle of a two word instruction.
+	 */
+	private final FirmwareAnalysis analysis;
+	/**
+	 * Number of (word) addresses in code memory.
+	 */
+	private final int words;
+	/**
+	 * The compiled translation, or <code>null</code> if it could not be
+	 * compiled.
+	 */
+	private final @Nullable Class<? extends TranslatedCode> translation;
+
+	/**
+	 * Construct the translation of a given firmware image.
+	 *
+	 * @param image The firmware image.
+	 * @param name  Name of the class to generate.
+	 */
+	private Translator(FirmwareImage image, String name) {
+		this.decoded = image.getDecoded();
+		this.analysis = FirmwareAnalysis.of(image.getFirmware());
+		this.words = image.getFlash().size() / 2;
+		this.translation = compile(name, generate(name));
+	}
+
+	/**
+	 * Get the translation of a given firmware image, generating and compiling it
+	 * if this has not already been done.
+	 *
+	 * @param image The firmware image in question.
+	 * @return The translator.
+	 */
+	public static Translator of(FirmwareImage image) {
+		long hash = CorpusFile.hash(image.getFirmware());
+		return CACHE.computeIfAbsent(Long.valueOf(hash), h -> new Translator(image, "Firmware" + Long.toHexString(hash))); //$NON-NLS-1$
+	}
+
+	/**
+	 * Create a fresh instance of the translated code, which can then be bound to
+	 * an emulator.
+	 *
+	 * @return The instance, or <code>null</code> if no translation is available.
+	 */
+	public @Nullable TranslatedCode newInstance() {
+		Class<? extends TranslatedCode> t = this.translation;
+		if (t == null) {
+			return null;
+		}
+		try {
+			return t.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Generate the source of the translation. There is one method for each block,
+	 * and the blocks are dispatched by address through a two-level switch.
+	 *
+	 * @param name Name of the class to generate.
+	 * @return The source.
+	 */
+	private String generate(String name) {
+		BitSet leaders = findLeaders();
+		StringBuilder blocks = new StringBuilder();
+		BitSet translated = new BitSet();
+		// NOTE: splitting an overlong block adds a leader further on, which is then
+		// visited by this same loop.
+		for (int pc = leaders.nextSetBit(0); pc >= 0 && pc < this.words; pc = leaders.nextSetBit(pc + 1)) {
+			if (isTranslatable(pc)) {
+				translateBlock(pc, leaders, blocks);
+				translated.set(pc);
+			}
+		}
+		StringBuilder out = new StringBuilder();
+		out.append("public final class ").append(name).append(" extends ") //$NON-NLS-1$ //$NON-NLS-2$
+				.append(TranslatedCode.class.getName()).append(" {\n"); //$NON-NLS-1$
+		out.append("  @Override public int execute(int pc) {\n    switch (pc >>> ").append(CHUNK_BITS) //$NON-NLS-1$
+				.append(") {\n"); //$NON-NLS-1$
+		int chunks = (this.words >>> CHUNK_BITS) + 1;
+		for (int c = 0; c != chunks; ++c) {
+			int start = translated.nextSetBit(c << CHUNK_BITS);
+			if (start >= 0 && (start >>> CHUNK_BITS) == c) {
+				out.append("    case ").append(c).append(": return d").append(c).append("(pc);\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+		}
+		out.append("    default: return -1;\n    }\n  }\n"); //$NON-NLS-1$
+		for (int c = 0; c != chunks; ++c) {
+			int start = translated.nextSetBit(c << CHUNK_BITS);
+			if (start < 0 || (start >>> CHUNK_BITS) != c) {
+				continue;
+			}
+			out.append("  private int d").append(c).append("(int pc) {\n    switch (pc) {\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			for (int pc = start; pc >= 0 && (pc >>> CHUNK_BITS) == c; pc = translated.nextSetBit(pc + 1)) {
+				out.append("    case ").append(pc).append(": return b").append(pc).append("();\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			}
+			out.append("    default: return -1;\n    }\n  }\n"); //$NON-NLS-1$
+		}
+		out.append(blocks).append("}\n"); //$NON-NLS-1$
+		return out.toString();
+	}
+
+	/**
+	 * Identify the addresses at which blocks begin. These are the targets of all
+	 * control transfers (including return addresses), and the addresses
+	 * following instructions left to the interpreter.
+	 *
+	 * @return The set of leaders.
+	 */
+	private BitSet findLeaders() {
+		BitSet leaders = new BitSet();
+		leaders.set(0);
+		for (int pc = 0; pc != this.words; ++pc) {
+			AvrInstruction insn = this.decoded[pc];
+			if (insn == null || !this.analysis.isReachableInstruction(pc)) {
+				continue;
+			}
+			int next = pc + insn.getWidth();
+			if (isTransfer(insn) || !isTranslatable(pc)) {
+				leaders.set(next);
+				int target = getTarget(pc);
+				if (target >= 0 && target < this.words) {
+					leaders.set(target);
+				}
+			}
+		}
+		return leaders;
+	}
+
+	/**
+	 * Translate the block beginning at a given address into a method. The block
+	 * continues until a control transfer, an instruction which cannot be
+	 * translated, the next leader or the maximum block size.
+	 *
+	 * @param start   The (word) address of the block.
+	 * @param leaders The set of leaders, which is extended if the block is split.
+	 * @param out     The source being generated.
+	 */
+	private void translateBlock(int start, BitSet leaders, StringBuilder out) {
+		out.append("  private int b").append(start).append("() {\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		out.append("    byte[] r = this.r;\n    byte[] m = this.m;\n"); //$NON-NLS-1$
+		int pc = start;
+		for (int count = 0;; ++count) {
+			if (count != 0 && (pc >= this.words || leaders.get(pc) || !isTranslatable(pc) || count == MAX_BLOCK)) {
+				leaders.set(pc);
+				out.append("    ").append(exit(count, Integer.toString(pc))).append('\n'); //$NON-NLS-1$
+				break;
+			}
+			AvrInstruction insn = this.decoded[pc];
+			out.append("    // ").append(pc).append(": ").append(insn).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+			String guard = getGuard(insn);
+			if (guard != null) {
+				out.append("    if (").append(guard).append(") ").append(exit(count, Integer.toString(pc))).append('\n'); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			out.append("    hit(").append(pc).append(");\n"); //$NON-NLS-1$ //$NON-NLS-2$
+			out.append("    ").append(translate(pc, insn)).append('\n'); //$NON-NLS-1$
+			if (isTransfer(insn)) {
+				out.append("    ").append(translateTransfer(pc, insn, count + 1)).append('\n'); //$NON-NLS-1$
+				break;
+			}
+			pc += insn.getWidth();
+		}
+		out.append("  }\n"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Generate an exit from a block.
+	 *
+	 * @param count Number of instructions executed before the exit.
+	 * @param pc    Expression giving the address at which to continue.
+	 * @return The statement.
+	 */
+	private static String exit(int count, String pc) {
+		if (count == 0) {
+			return "return -1;"; //$NON-NLS-1$
+		}
+		return "{ this.executed = " + count + "; return " + pc + "; }"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/**
+	 * Determine whether the instruction at a given address can be translated.
+	 *
+	 * @param pc The (word) address of the instruction.
+	 * @return True if it can be translated.
+	 */
+	private boolean isTranslatable(int pc) {
+		AvrInstruction insn = pc < this.words ? this.decoded[pc] : null;
+		if (insn == null || !this.analysis.isReachableInstruction(pc)) {
+			return false;
+		}
+		switch (insn.getOpcode()) {
+		case NOP:
+		case MOV:
+		case MOVW:
+		case LDI:
+		case SER:
+		case ADD:
+		case ADC:
+		case SUB:
+		case SBC:
+		case SUBI:
+		case SBCI:
+		case CP:
+		case CPC:
+		case CPI:
+		case AND:
+		case ANDI:
+		case OR:
+		case ORI:
+		case EOR:
+		case COM:
+		case NEG:
+		case INC:
+		case DEC:
+		case ASR:
+		case LSR:
+		case ROR:
+		case SWAP:
+		case ADIW:
+		case SBIW:
+		case BST:
+		case BLD:
+		case LD_X:
+		case LD_X_INC:
+		case LD_Y:
+		case LD_Y_INC:
+		case LDD_Y_Q:
+		case LD_Z:
+		case LD_Z_INC:
+		case LDD_Z_Q:
+		case LDS:
+		case ST_X:
+		case ST_X_INC:
+		case ST_Y:
+		case ST_Y_INC:
+		case STD_Y_Q:
+		case ST_Z:
+		case ST_Z_INC:
+		case STD_Z_Q:
+		case STS_DATA_WIDE:
+		case LPM_Z:
+		case LPM_Z_INC:
+		case PUSH:
+		case POP:
+		case RCALL:
+		case RET:
+		case BRBC:
+		case BRBS:
+		case BREQ:
+		case BRGE:
+		case BRHC:
+		case BRHS:
+		case BRID:
+		case BRIE:
+		case BRLO:
+		case BRLT:
+		case BRMI:
+		case BRNE:
+		case BRPL:
+		case BRSH:
+		case BRTC:
+		case BRTS:
+		case BRVC:
+		case BRVS:
+			return true;
+		case RJMP:
+			// NOTE: a jump to itself halts the machine.
+			return ((AvrInstruction.RJMP) insn).k != -1;
+		case CPSE:
+		case SBRC:
+		case SBRS:
+			// NOTE: the size of the skip must be known.
+			return (pc + 1) < this.words && this.decoded[pc + 1] != null;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Determine whether a given instruction transfers control (i.e. ends a
+	 * block).
+	 *
+	 * @param insn The instruction.
+	 * @return True if it transfers control.
+	 */
+	private static boolean isTransfer(AvrInstruction insn) {
+		switch (insn.getOpcode()) {
+		case RJMP:
+		case RCALL:
+		case RET:
+		case CPSE:
+		case SBRC:
+		case SBRS:
+		case SBIC:
+		case SBIS:
+		case JMP:
+		case CALL:
+		case RETI:
+		case IJMP:
+		case ICALL:
+		case EIJMP:
+		case EICALL:
+			return true;
+		default:
+			return insn instanceof AvrInstruction.RelativeAddress
+					|| insn instanceof AvrInstruction.FlagRelativeAddress;
+		}
+	}
+
+	/**
+	 * Determine the (static) target of a control transfer, other than the
+	 * following instruction. For a skip, this is the address following the
+	 * skipped instruction.
+	 *
+	 * @param pc The (word) address of the instruction.
+	 * @return The target, or <code>-1</code> if there is none.
+	 */
+	private int getTarget(int pc) {
+		AvrInstruction insn = this.decoded[pc];
+		int next = pc + insn.getWidth();
+		switch (insn.getOpcode()) {
+		case CPSE:
+		case SBRC:
+		case SBRS:
+		case SBIC:
+		case SBIS:
+			return next < this.words && this.decoded[next] != null ? next + this.decoded[next].getWidth() : -1;
+		case JMP:
+			return ((AvrInstruction.JMP) insn).k;
+		case CALL:
+			return ((AvrInstruction.CALL) insn).k;
+		default:
+			if (insn instanceof AvrInstruction.RelativeAddress) {
+				return next + ((AvrInstruction.RelativeAddress) insn).k;
+			} else if (insn instanceof AvrInstruction.FlagRelativeAddress) {
+				return next + ((AvrInstruction.FlagRelativeAddress) insn).k;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Determine the condition under which a given instruction must be left to the
+	 * interpreter. This arises for memory accesses outside SRAM, which may touch
+	 * I/O space (or be invalid).
+	 *
+	 * @param insn The instruction.
+	 * @return The condition, or <code>null</code> if it can always be executed.
+	 */
+	private static @Nullable String getGuard(AvrInstruction insn) {
+		switch (insn.getOpcode()) {
+		case LD_X:
+		case LD_X_INC:
+		case ST_X:
+		case ST_X_INC:
+			return "!ram(word(" + X + "))"; //$NON-NLS-1$ //$NON-NLS-2$
+		case LD_Y:
+		case LD_Y_INC:
+		case ST_Y:
+		case ST_Y_INC:
+			return "!ram(word(" + Y + "))"; //$NON-NLS-1$ //$NON-NLS-2$
+		case LD_Z:
+		case LD_Z_INC:
+		case ST_Z:
+		case ST_Z_INC:
+			return "!ram(word(" + Z + "))"; //$NON-NLS-1$ //$NON-NLS-2$
+		case LDD_Y_Q:
+		case STD_Y_Q:
+			return "!ram(word(" + Y + ") + " + ((AvrInstruction.RegisterDisplacement) insn).q + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		case LDD_Z_Q:
+		case STD_Z_Q:
+			return "!ram(word(" + Z + ") + " + ((AvrInstruction.RegisterDisplacement) insn).q + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		case LDS:
+		case STS_DATA_WIDE:
+			return "!ram(" + ((AvrInstruction.RegisterAbsoluteAddress) insn).k + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+		case LPM_Z:
+		case LPM_Z_INC:
+			return "word(" + Z + ") >= this.flash.length"; //$NON-NLS-1$ //$NON-NLS-2$
+		case PUSH:
+			return "!ram(sp())"; //$NON-NLS-1$
+		case POP:
+			return "!ram(sp() + 1)"; //$NON-NLS-1$
+		case RCALL:
+			return "!ram(sp() - 1) || !ram(sp())"; //$NON-NLS-1$
+		case RET:
+			return "!ram(sp() + 1) || !ram(sp() + 2)"; //$NON-NLS-1$
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Translate the effect of a given instruction on registers and memory (i.e.
+	 * excluding any transfer of control).
+	 *
+	 * @param pc   The (word) address of the instruction.
+	 * @param insn The instruction.
+	 * @return The statement(s).
+	 */
+	private static String translate(int pc, AvrInstruction insn) {
+		switch (insn.getOpcode()) {
+		case MOV:
+			return rr(insn, "r[%d] = r[%d];"); //$NON-NLS-1$
+		case MOVW:
+			return rr(insn, "word(%d, word(%d));"); //$NON-NLS-1$
+		case LDI:
+			return ri(insn, "r[%d] = (byte) %d;"); //$NON-NLS-1$
+		case SER:
+			return r(insn, "r[%d] = -1;"); //$NON-NLS-1$
+		case ADD:
+			return rr(insn, "r[%1$d] = add(r[%1$d], r[%2$d]);"); //$NON-NLS-1$
+		case ADC:
+			return rr(insn, "r[%1$d] = adc(r[%1$d], r[%2$d]);"); //$NON-NLS-1$
+		case SUB:
+			return rr(insn, "r[%1$d] = subz(r[%1$d], r[%2$d]);"); //$NON-NLS-1$
+		case SBC:
+			return rr(insn, "r[%1$d] = sbc(r[%1$d], r[%2$d]);"); //$NON-NLS-1$
+		case SUBI:
+			return ri(insn, "r[%1$d] = sub(r[%1$d], (byte) %2$d);"); //$NON-NLS-1$
+		case SBCI:
+			return ri(insn, "r[%1$d] = sbc(r[%1$d], (byte) %2$d);"); //$NON-NLS-1$
+		case CP:
+			return rr(insn, "sub(r[%d], r[%d]);"); //$NON-NLS-1$
+		case CPC:
+			return rr(insn, "sbc(r[%d], r[%d]);"); //$NON-NLS-1$
+		case CPI:
+			return ri(insn, "sub(r[%d], (byte) %d);"); //$NON-NLS-1$
+		case AND:
+			return rr(insn, "r[%1$d] = logic(r[%1$d] & r[%2$d]);"); //$NON-NLS-1$
+		case ANDI:
+			return ri(insn, "r[%1$d] = logic(r[%1$d] & %2$d);"); //$NON-NLS-1$
+		case OR:
+			return rr(insn, "r[%1$d] = logic(r[%1$d] | r[%2$d]);"); //$NON-NLS-1$
+		case ORI:
+			return ri(insn, "r[%1$d] = logic(r[%1$d] | %2$d);"); //$NON-NLS-1$
+		case EOR:
+			return rr(insn, "r[%1$d] = logic(r[%1$d] ^ r[%2$d]);"); //$NON-NLS-1$
+		case COM:
+		case NEG:
+		case INC:
+		case DEC:
+		case ASR:
+		case LSR:
+		case ROR:
+			return r(insn, "r[%1$d] = " + insn.getOpcode().name().toLowerCase(Locale.ROOT) + "(r[%1$d]);"); //$NON-NLS-1$ //$NON-NLS-2$
+		case SWAP:
+			return r(insn, "r[%1$d] = (byte) (((r[%1$d] & 0x0F) << 4) | ((r[%1$d] & 0xF0) >> 4));"); //$NON-NLS-1$
+		case ADIW:
+			return ri(insn, "adiw(%d, %d);"); //$NON-NLS-1$
+		case SBIW:
+			return ri(insn, "sbiw(%d, %d);"); //$NON-NLS-1$
+		case BST:
+			return rb(insn, "bst(r[%d], %d);"); //$NON-NLS-1$
+		case BLD:
+			// NOTE: when T is set, the interpreter sets every bit except the one given.
+			return rb(insn, "r[%1$d] = (byte) ((this.sreg & T) != 0 ? ~(1 << %2$d) : r[%1$d] & ~(1 << %2$d));"); //$NON-NLS-1$
+		case LD_X:
+			return load(insn, "word(" + X + ")", false); //$NON-NLS-1$ //$NON-NLS-2$
+		case LD_X_INC:
+			return load(insn, "word(" + X + ")", true); //$NON-NLS-1$ //$NON-NLS-2$
+		case LD_Y:
+			return load(insn, "word(" + Y + ")", false); //$NON-NLS-1$ //$NON-NLS-2$
+		case LD_Y_INC:
+			return load(insn, "word(" + Y + ")", true); //$NON-NLS-1$ //$NON-NLS-2$
+		case LD_Z:
+			return load(insn, "word(" + Z + ")", false); //$NON-NLS-1$ //$NON-NLS-2$
+		case LD_Z_INC:
+			return load(insn, "word(" + Z + ")", true); //$NON-NLS-1$ //$NON-NLS-2$
+		case LDD_Y_Q:
+			return load(insn, "word(" + Y + ") + " + ((AvrInstruction.RegisterDisplacement) insn).q, false); //$NON-NLS-1$ //$NON-NLS-2$
+		case LDD_Z_Q:
+			return load(insn, "word(" + Z + ") + " + ((AvrInstruction.RegisterDisplacement) insn).q, false); //$NON-NLS-1$ //$NON-NLS-2$
+		case LDS:
+			return load(insn, Integer.toString(((AvrInstruction.RegisterAbsoluteAddress) insn).k), false);
+		case ST_X:
+			return store(insn, "word(" + X + ")", false); //$NON-NLS-1$ //$NON-NLS-2$
+		case ST_X_INC:
+			return store(insn, "word(" + X + ")", true); //$NON-NLS-1$ //$NON-NLS-2$
+		case ST_Y:
+			return store(insn, "word(" + Y + ")", false); //$NON-NLS-1$ //$NON-NLS-2$
+		case ST_Y_INC:
+			return store(insn, "word(" + Y + ")", true); //$NON-NLS-1$ //$NON-NLS-2$
+		case ST_Z:
+			return store(insn, "word(" + Z + ")", false); //$NON-NLS-1$ //$NON-NLS-2$
+		case ST_Z_INC:
+			return store(insn, "word(" + Z + ")", true); //$NON-NLS-1$ //$NON-NLS-2$
+		case STD_Y_Q:
+			return store(insn, "word(" + Y + ") + " + ((AvrInstruction.RegisterDisplacement) insn).q, false); //$NON-NLS-1$ //$NON-NLS-2$
+		case STD_Z_Q:
+			return store(insn, "word(" + Z + ") + " + ((AvrInstruction.RegisterDisplacement) insn).q, false); //$NON-NLS-1$ //$NON-NLS-2$
+		case STS_DATA_WIDE:
+			return store(insn, Integer.toString(((AvrInstruction.RegisterAbsoluteAddress) insn).k), false);
+		case LPM_Z:
+			return r(insn, "r[%d] = this.flash[word(" + Z + ")];"); //$NON-NLS-1$ //$NON-NLS-2$
+		case LPM_Z_INC:
+			return r(insn, "{ int a = word(" + Z + "); r[%d] = this.flash[a]; word(" + Z + ", a + 1); }"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		case PUSH:
+			return r(insn, "{ int p = sp(); store(p, r[%d]); sp(p - 1); }"); //$NON-NLS-1$
+		case POP:
+			return r(insn, "{ int p = sp() + 1; sp(p); r[%d] = m[p - RAM]; }"); //$NON-NLS-1$
+		case RCALL: {
+			int ret = pc + 1;
+			return "{ int p = sp(); store(p - 1, (byte) " + ret + "); store(p, (byte) " + (ret >> 8) //$NON-NLS-1$ //$NON-NLS-2$
+					+ "); sp(p - 2); }"; //$NON-NLS-1$
+		}
+		default:
+			// NOTE: control transfers are handled separately.
+			return ""; //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Translate the transfer of control at the end of a block.
+	 *
+	 * @param pc    The (word) address of the instruction.
+	 * @param insn  The instruction.
+	 * @param count Number of instructions executed by the block (including this
+	 *              one).
+	 * @return The statement(s).
+	 */
+	private String translateTransfer(int pc, AvrInstruction insn, int count) {
+		int next = pc + insn.getWidth();
+		int target = getTarget(pc);
+		switch (insn.getOpcode()) {
+		case RJMP:
+		case RCALL:
+			return exit(count, Integer.toString(target));
+		case RET:
+			return "{ int p = sp() + 2; sp(p); this.executed = " + count //$NON-NLS-1$
+					+ "; return ((m[p - RAM] & 0xFF) << 8) | (m[p - 1 - RAM] & 0xFF); }"; //$NON-NLS-1$
+		case CPSE:
+			return skip(rr(insn, "r[%d] == r[%d]"), count, target, next); //$NON-NLS-1$
+		case SBRC:
+			return skip(rb(insn, "(r[%d] & (1 << %d)) == 0"), count, target, next); //$NON-NLS-1$
+		case SBRS:
+			return skip(rb(insn, "(r[%d] & (1 << %d)) != 0"), count, target, next); //$NON-NLS-1$
+		case BRBS:
+			return branch("(this.sreg & " + (1 << ((AvrInstruction.BRBS) insn).s) + ") != 0", count, target, next); //$NON-NLS-1$ //$NON-NLS-2$
+		case BRBC:
+			return branch("(this.sreg & " + (1 << ((AvrInstruction.BRBC) insn).s) + ") == 0", count, target, next); //$NON-NLS-1$ //$NON-NLS-2$
+		case BRLO:
+			return branch("(this.sreg & C) != 0", count, target, next); //$NON-NLS-1$
+		case BRSH:
+			return branch("(this.sreg & C) == 0", count, target, next); //$NON-NLS-1$
+		case BREQ:
+			return branch("(this.sreg & Z) != 0", count, target, next); //$NON-NLS-1$
+		case BRNE:
+			return branch("(this.sreg & Z) == 0", count, target, next); //$NON-NLS-1$
+		case BRMI:
+			return branch("(this.sreg & N) != 0", count, target, next); //$NON-NLS-1$
+		case BRPL:
+			return branch("(this.sreg & N) == 0", count, target, next); //$NON-NLS-1$
+		case BRVS:
+			return branch("(this.sreg & V) != 0", count, target, next); //$NON-NLS-1$
+		case BRVC:
+			return branch("(this.sreg & V) == 0", count, target, next); //$NON-NLS-1$
+		case BRLT:
+			return branch("(this.sreg & S) != 0", count, target, next); //$NON-NLS-1$
+		case BRGE:
+			return branch("(this.sreg & S) == 0", count, target, next); //$NON-NLS-1$
+		case BRHS:
+			return branch("(this.sreg & H) != 0", count, target, next); //$NON-NLS-1$
+		case BRHC:
+			return branch("(this.sreg & H) == 0", count, target, next); //$NON-NLS-1$
+		case BRTS:
+			return branch("(this.sreg & T) != 0", count, target, next); //$NON-NLS-1$
+		case BRTC:
+			return branch("(this.sreg & T) == 0", count, target, next); //$NON-NLS-1$
+		case BRIE:
+			return branch("(this.sreg & " + AVR.INTERRUPT_FLAG + ") != 0", count, target, next); //$NON-NLS-1$ //$NON-NLS-2$
+		case BRID:
+			return branch("(this.sreg & " + AVR.INTERRUPT_FLAG + ") == 0", count, target, next); //$NON-NLS-1$ //$NON-NLS-2$
+		default:
+			throw new IllegalArgumentException("unexpected transfer: " + insn); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Generate a conditional transfer of control.
+	 *
+	 * @param condition Condition under which control transfers to the target.
+	 * @param count     Number of instructions executed by the block.
+	 * @param target    Address to continue at if the condition holds.
+	 * @param next      Address to continue at otherwise.
+	 * @return The statement.
+	 */
+	private static String branch(String condition, int count, int target, int next) {
+		return "this.executed = " + count + "; return " + condition + " ? " + target + " : " + next + ";"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	/**
+	 * Generate a skip over the following instruction at the end of a block. The
+	 * skipped instruction is recorded as covered, as for the interpreter.
+	 *
+	 * @param condition Expression which holds if the skip is taken.
+	 * @param count     Number of instructions executed by the block.
+	 * @param target    The address following the skipped instruction.
+	 * @param next      The address of the skipped instruction.
+	 * @return The statements.
+	 */
+	private static String skip(String condition, int count, int target, int next) {
+		return "this.executed = " + count + "; if (" + condition + ") { skip(" + next + "); return " + target //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				+ "; } return " + next + ";"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * Generate a load from SRAM into a register, optionally incrementing the
+	 * pointer afterwards. The address is read before anything is written, as for
+	 * the interpreter.
+	 *
+	 * @param insn      The instruction.
+	 * @param address   Expression giving the data address.
+	 * @param increment Whether to increment the pointer.
+	 * @return The statement.
+	 */
+	private static String load(AvrInstruction insn, String address, boolean increment) {
+		String access = "r[%d] = m[a - RAM];"; //$NON-NLS-1$
+		return r(insn, access(address, access, increment));
+	}
+
+	/**
+	 * Generate a store from a register into SRAM, optionally incrementing the
+	 * pointer afterwards.
+	 *
+	 * @param insn      The instruction.
+	 * @param address   Expression giving the data address.
+	 * @param increment Whether to increment the pointer.
+	 * @return The statement.
+	 */
+	private static String store(AvrInstruction insn, String address, boolean increment) {
+		String access = "store(a, r[%d]);"; //$NON-NLS-1$
+		return r(insn, access(address, access, increment));
+	}
+
+	/**
+	 * Generate a memory access through a given address.
+	 *
+	 * @param address   Expression giving the data address.
+	 * @param access    The access, given <code>a</code> holding the address.
+	 * @param increment Whether to increment the pointer afterwards.
+	 * @return The statement.
+	 */
+	private static String access(String address, String access, boolean increment) {
+		String inc = increment ? " " + address.replace(")", ", a + 1);") : ""; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		return "{ int a = " + address + "; " + access + inc + " }"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	/**
+	 * Format a template for an instruction with a single register operand (and,
+	 * possibly, an address).
+	 *
+	 * @param insn     The instruction.
+	 * @param template The template.
+	 * @return The formatted template.
+	 */
+	private static String r(AvrInstruction insn, String template) {
+		int rd;
+		if (insn instanceof AvrInstruction.RegisterDisplacement) {
+			rd = ((AvrInstruction.RegisterDisplacement) insn).Rd;
+		} else if (insn instanceof AvrInstruction.RegisterAbsoluteAddress) {
+			rd = ((AvrInstruction.RegisterAbsoluteAddress) insn).Rd;
+		} else {
+			rd = ((AvrInstruction.Register) insn).Rd;
+		}
+		return format(template, rd);
+	}
+
+	/**
+	 * Format a template for an instruction with two register operands.
+	 *
+	 * @param insn     The instruction.
+	 * @param template The template.
+	 * @return The formatted template.
+	 */
+	private static String rr(AvrInstruction insn, String template) {
+		AvrInstruction.RegisterRegister i = (AvrInstruction.RegisterRegister) insn;
+		return format(template, i.Rd, i.Rr);
+	}
+
+	/**
+	 * Format a template for an instruction with register and immediate operands.
+	 *
+	 * @param insn     The instruction.
+	 * @param template The template.
+	 * @return The formatted template.
+	 */
+	private static String ri(AvrInstruction insn, String template) {
+		AvrInstruction.RegisterImmediate i = (AvrInstruction.RegisterImmediate) insn;
+		return format(template, i.Rd, i.K);
+	}
+
+	/**
+	 * Format a template for an instruction with register and bit operands.
+	 *
+	 * @param insn     The instruction.
+	 * @param template The template.
+	 * @return The formatted template.
+	 */
+	private static String rb(AvrInstruction insn, String template) {
+		AvrInstruction.RegisterBit i = (AvrInstruction.RegisterBit) insn;
+		return format(template, i.Rd, i.b);
+	}
+
+	/**
+	 * Format a template with integer arguments.
+	 *
+	 * @param template The template.
+	 * @param args     The arguments.
+	 * @return The formatted template.
+	 */
+	private static String format(String template, int... args) {
+		Object[] boxed = new Object[args.length];
+		for (int i = 0; i != args.length; ++i) {
+			boxed[i] = Integer.valueOf(args[i]);
+		}
+		return String.format(template, boxed);
+	}
+
+	/**
+	 * Compile the source of a translation in memory, and load the resulting
+	 * class.
+	 *
+	 * @param name   Name of the class.
+	 * @param source Its source.
+	 * @return The loaded class, or <code>null</code> if it could not be compiled.
+	 */
+	private static @Nullable Class<? extends TranslatedCode> compile(String name, String source) {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null) {
+			return null;
+		}
+		MemoryFileManager files = new MemoryFileManager(javac.getStandardFileManager(null, null, StandardCharsets.UTF_8));
+		JavaFileObject unit = new SimpleJavaFileObject(URI.create("string:///" + name + ".java"), //$NON-NLS-1$ //$NON-NLS-2$
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		List<String> options = Arrays.asList("-classpath", getClassPath(), "-g:none", "-proc:none", "-nowarn"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		if (!javac.getTask(null, files, null, options, null, Collections.singletonList(unit)).call().booleanValue()) {
+			return null;
+		}
+		byte[] bytes = files.output.toByteArray();
+		ClassLoader loader = new ClassLoader(TranslatedCode.class.getClassLoader()) {
+			@Override
+			protected Class<?> findClass(String n) throws ClassNotFoundException {
+				if (!n.equals(name)) {
+					throw new ClassNotFoundException(n);
+				}
+				return defineClass(n, bytes, 0, bytes.length);
+			}
+		};
+		try {
+			return loader.loadClass(name).asSubclass(TranslatedCode.class);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Determine the class path against which translations are compiled. This
+	 * includes wherever this class and the emulator were loaded from, in case
+	 * they are not on the system class path.
+	 *
+	 * @return The class path.
+	 */
+	private static String getClassPath() {
+		Set<String> path = new LinkedHashSet<>(Arrays.asList(System.getProperty("java.class.path").split(File.pathSeparator))); //$NON-NLS-1$
+		for (Class<?> c : new Class<?>[] { TranslatedCode.class, AVR.class, Nullable.class }) {
+			CodeSource source = c.getProtectionDomain().getCodeSource();
+			if (source != null) {
+				try {
+					path.add(new File(source.getLocation().toURI()).getPath());
+				} catch (URISyntaxException | IllegalArgumentException e) {
+					// Not a file, so cannot be passed to the compiler.
+				}
+			}
+		}
+		return String.join(File.pathSeparator, path);
+	}
+
+	/**
+	 * A file manager which captures the class file produced by the compiler in
+	 * memory, rather than writing it to disk.
+	 */
+	private static final class MemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+		/**
+		 * The class file produced.
+		 */
+		private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		/**
+		 * Construct a file manager which forwards everything other than output.
+		 *
+		 * @param manager The underlying file manager.
+		 */
+		MemoryFileManager(JavaFileManager manager) {
+			super(manager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+				FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("bytes:///" + className + kind.extension), kind) { //$NON-NLS-1$
+				@Override
+				public OutputStream openOutputStream() {
+					return MemoryFileManager.this.output;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package tinyboycov.util;
+
+/**
+ * A table of non-negative weights supporting weighted random selection. The
+ * weights are held in a Fenwick (binary indexed) tree, such that updating a
+ * weight, summing all weights and finding the entry at which a given running
+ * total is reached all take time logarithmic in the size of the table. Hence,
+ * selecting from a large table does not require summing it afresh each time.
+ */
+public final class WeightTree {
+	/**
+	 * The weight of each entry, where zero indicates an empty entry.
+	 */
+	private double[] weights;
+	/**
+	 * The Fenwick tree itself (indexed from one), where each element holds the
+	 * sum of a range of weights ending at that element.
+	 */
+	private double[] tree;
+
+	/**
+	 * Construct an empty table.
+	 */
+	public WeightTree() {
+		this.weights = new double[16];
+		this.tree = new double[17];
+	}
+
+	/**
+	 * Get the weight of a given entry.
+	 *
+	 * @param index The entry in question.
+	 * @return Its weight (zero if empty).
+	 */
+	public double get(int index) {
+		return index < this.weights.length ? this.weights[index] : 0;
+	}
+
+	/**
+	 * Set the weight of a given entry, growing the table if necessary.
+	 *
+	 * @param index  The entry in question.
+	 * @param weight Its new weight (zero to empty it).
+	 */
+	public void set(int index, double weight) {
+		if (index >= this.weights.length) {
+			grow(index + 1);
+		}
+		double delta = weight - this.weights[index];
+		this.weights[index] = weight;
+		for (int i = index + 1; i < this.tree.length; i += i & -i) {
+			this.tree[i] += delta;
+		}
+	}
+
+	/**
+	 * Get the sum of all weights.
+	 *
+	 * @return The total weight.
+	 */
+	public double total() {
+		double t = 0;
+		for (int i = this.tree.length - 1; i > 0; i -= i & -i) {
+			t += this.tree[i];
+		}
+		return t;
+	}
+
+	/**
+	 * Find the entry at which the running total of weights first exceeds a given
+	 * value. Choosing that value uniformly at random from zero up to the total
+	 * weight thus chooses each entry with probability proportional to its
+	 * weight.
+	 *
+	 * @param value The value (between zero and the total weight).
+	 * @return The entry found, or <code>-1</code> if the table is empty.
+	 */
+	public int find(double value) {
+		int n = this.weights.length;
+		int pos = 0;
+		double r = value;
+		for (int step = Integer.highestOneBit(n); step != 0; step >>>= 1) {
+			int next = pos + step;
+			if (next <= n && this.tree[next] <= r) {
+				pos = next;
+				r -= this.tree[next];
+			}
+		}
+		// Rounding error may leave us on (or past) an empty entry
+		for (int i = Math.min(pos, n - 1); i >= 0; --i) {
+			if (this.weights[i] != 0) {
+				return i;
+			}
+		}
+		for (int i = pos + 1; i < n; ++i) {
+			if (this.weights[i] != 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Grow the table to hold at least a given number of entries, and rebuild the
+	 * tree from the weights (which also discards any accumulated rounding error).
+	 *
+	 * @param capacity The number of entries required.
+	 */
+	private void grow(int capacity) {
+		double[] ws = new double[Math.max(capacity, this.weights.length * 2)];
+		System.arraycopy(this.weights, 0, ws, 0, this.weights.length);
+		double[] t = new double[ws.length + 1];
+		for (int i = 1; i < t.length; ++i) {
+			t[i] += ws[i - 1];
+			int j = i + (i & -i);
+			if (j < t.length) {
+				t[j] += t[i];
+			}
+		}
+		this.weights = ws;
+		this.tree = t;
+	}
+}